@@ -0,0 +1,54 @@
+package huffman;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler and prints every score as MB/s of
+ * input next to the allocation per operation. Arguments are JMH command line
+ * options, e.g. a benchmark name pattern or "-p corpus=log". On Java 9 and
+ * later the forks get the Vector API module, so that the vector kernels can
+ * load.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		OptionsBuilder builder = new OptionsBuilder();
+		builder.parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class);
+		// the vector kernels need the incubator module, which Java 8 lacks
+		if (!System.getProperty("java.specification.version").startsWith("1."))
+			builder.jvmArgsAppend("--add-modules=jdk.incubator.vector");
+		Options options = builder.build();
+		Collection<RunResult> results = new Runner(options).run();
+		System.out.println();
+		System.out.printf("%-40s %-8s %10s %12s %14s%n", "Benchmark", "Corpus", "Size", "MB/s", "Alloc B/op");
+		for (RunResult result : results) {
+			String name = result.getParams().getBenchmark();
+			name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+			int size = Integer.parseInt(result.getParams().getParam("size"));
+			double ops = result.getPrimaryResult().getScore();
+			String throughput = name.endsWith(".build") || name.endsWith(".buildHuffmanTree")
+					? String.format("%.0f op/s", ops)
+					: String.format("%.1f", ops * size / (1 << 20));
+			System.out.printf("%-40s %-8s %10d %12s %14.0f%n", name, result.getParams().getParam("corpus"), size,
+					throughput, allocation(result));
+		}
+	}
+
+	private static double allocation(RunResult result) {
+		// JMH declares the map with the raw Result type, so only its keys are named here
+		for (String name : result.getSecondaryResults().keySet()) {
+			if (name.endsWith("gc.alloc.rate.norm"))
+				return result.getSecondaryResults().get(name).getScore();
+		}
+		return Double.NaN;
+	}
+}
@@ -0,0 +1,97 @@
+package huffman;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Deterministic benchmark inputs.
+ */
+final class Corpus {
+	static final String UNIFORM = "uniform";
+	static final String TEXT = "text";
+	static final String LOG = "log";
+	static final String BINARY = "binary";
+
+	private static final String[] LEVELS = { "INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR" };
+	private static final String[] PATHS = { "/api/orders", "/api/users", "/health", "/api/search", "/static/app.js" };
+
+	private Corpus() {
+	}
+
+	static byte[] generate(String corpus, int size) {
+		Random random = new Random(42);
+		switch (corpus) {
+		case UNIFORM: {
+			byte[] data = new byte[size];
+			random.nextBytes(data);
+			return data;
+		}
+		case TEXT:
+			return text(random, size);
+		case LOG:
+			return log(random, size);
+		case BINARY:
+			return binary(random, size);
+		default:
+			throw new IllegalArgumentException("Unknown corpus " + corpus);
+		}
+	}
+
+	/*
+	 * Words drawn from a Zipf-like distribution over a fixed vocabulary.
+	 */
+	private static byte[] text(Random random, int size) {
+		String[] words = new String[2000];
+		for (int i = 0; i < words.length; i++) {
+			char[] word = new char[2 + random.nextInt(8)];
+			for (int j = 0; j < word.length; j++)
+				word[j] = (char) ('a' + Math.min(25, (int) (Math.abs(random.nextGaussian()) * 7)));
+			words[i] = new String(word);
+		}
+		StringBuilder sb = new StringBuilder(size + 16);
+		int sentence = 0;
+		while (sb.length() < size) {
+			int rank = (int) Math.min(words.length - 1, Math.exp(random.nextDouble() * Math.log(words.length)) - 1);
+			sb.append(words[rank]);
+			if (++sentence % 12 == 0)
+				sb.append(random.nextInt(4) == 0 ? ".\n" : ". ");
+			else
+				sb.append(random.nextInt(10) == 0 ? ", " : " ");
+		}
+		return fit(sb, size);
+	}
+
+	private static byte[] log(Random random, int size) {
+		StringBuilder sb = new StringBuilder(size + 200);
+		long time = 1_790_000_000_000L;
+		while (sb.length() < size) {
+			time += random.nextInt(50);
+			sb.append(time / 1000).append('.').append(String.format("%03d", time % 1000)).append(' ')
+					.append(LEVELS[random.nextInt(LEVELS.length)]).append(" [worker-").append(random.nextInt(16))
+					.append("] GET ").append(PATHS[random.nextInt(PATHS.length)]).append(" status=")
+					.append(random.nextInt(20) == 0 ? 500 : 200).append(" took=").append(random.nextInt(300))
+					.append("ms id=").append(Long.toHexString(random.nextLong())).append('\n');
+		}
+		return fit(sb, size);
+	}
+
+	/*
+	 * Little-endian ints of a geometric distribution, with runs of zeros.
+	 */
+	private static byte[] binary(Random random, int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i + 3 < size; i += 4) {
+			if (random.nextInt(8) == 0)
+				continue;
+			int value = (int) (-Math.log(1 - random.nextDouble()) * 200);
+			data[i] = (byte) value;
+			data[i + 1] = (byte) (value >>> 8);
+		}
+		return data;
+	}
+
+	private static byte[] fit(StringBuilder sb, int size) {
+		sb.setLength(size);
+		return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+}
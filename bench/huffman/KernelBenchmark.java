@@ -0,0 +1,66 @@
+package huffman;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of {@code size} bytes on each of the {@link Kernels}. The vector
+ * kernels need the forks to run with the Vector API module, which
+ * {@link BenchmarkMain} adds. Where they still cannot load, e.g. on Java 8,
+ * the "vector" runs say so and measure the kernels this JVM would use
+ * instead, so that a default run does not fail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+	@Param({ Corpus.UNIFORM, Corpus.TEXT, Corpus.LOG, Corpus.BINARY })
+	public String corpus;
+
+	@Param({ "1048576" })
+	public int size;
+
+	@Param({ "scalar", "paired", "vector" })
+	public String kernels;
+
+	private byte[] data;
+	private Kernels kernel;
+	private CodeTable table;
+
+	@Setup
+	public void setup() {
+		data = Corpus.generate(corpus, size);
+		if (kernels.equals("vector") && Kernels.VECTOR == null) {
+			kernel = Kernels.CURRENT;
+			System.err.println("Vector kernels are not available on this JVM, measuring the " + kernel
+					+ " kernels instead");
+		} else {
+			kernel = Kernels.forName(kernels);
+		}
+		long[] counts = new long[256];
+		Histogram.count(data, 0, data.length, counts);
+		table = new HuffmanCompressor().code(counts).table();
+	}
+
+	@Benchmark
+	public long encode() {
+		BitWriter bits = new BitWriter(data.length);
+		kernel.encode(table, data, 0, data.length, bits);
+		return bits.bitLength();
+	}
+}
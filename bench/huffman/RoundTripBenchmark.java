@@ -0,0 +1,81 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compression and decompression of {@code size} bytes through
+ * {@link BlockCompressor}, end to end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+
+	@Param({ Corpus.UNIFORM, Corpus.TEXT, Corpus.LOG, Corpus.BINARY })
+	public String corpus;
+
+	@Param({ "8388608" })
+	public int size;
+
+	@Param({ "1" })
+	public int threads;
+
+	private byte[] data;
+	private byte[] compressed;
+	private ForkJoinPool pool;
+	private BlockCompressor compressor;
+
+	@Setup
+	public void setup() throws IOException {
+		data = Corpus.generate(corpus, size);
+		pool = new ForkJoinPool(threads);
+		compressor = new BlockCompressor(BlockCompressor.DEFAULT_BLOCK_SIZE, pool);
+		compressed = compress();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public byte[] compress() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+		compressor.compress(new ByteArrayInputStream(data), out);
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] roundTrip() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+		compressor.decompress(new ByteArrayInputStream(compress()), out);
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] decompress() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+		compressor.decompress(new ByteArrayInputStream(compressed), out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,68 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Small messages coded with a code of their own against a
+ * {@link HuffmanDictionary} trained on the rest of the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmallMessageBenchmark {
+
+	@Param({ Corpus.TEXT, Corpus.LOG })
+	public String corpus;
+
+	@Param({ "64", "512" })
+	public int size;
+
+	private byte[] message;
+	private String text;
+	private HuffmanDictionary dictionary;
+	private byte[] encoded;
+
+	@Setup
+	public void setup() throws IOException {
+		byte[] data = Corpus.generate(corpus, 1 << 20);
+		message = Arrays.copyOf(data, size);
+		text = new String(message, StandardCharsets.ISO_8859_1);
+		dictionary = HuffmanDictionary.train(corpus, new ByteArrayInputStream(data, size, data.length - size));
+		encoded = dictionary.encode(message);
+	}
+
+	@Benchmark
+	public String perMessage() {
+		Huffman huffman = new Huffman(text, true, true);
+		return huffman.getEncoding(huffman.getDecoding());
+	}
+
+	@Benchmark
+	public byte[] dictionaryEncode() {
+		return dictionary.encode(message);
+	}
+
+	@Benchmark
+	public byte[] dictionaryDecode() {
+		return dictionary.decode(encoded);
+	}
+}
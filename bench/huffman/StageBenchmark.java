@@ -0,0 +1,112 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The byte engine one stage at a time: counting, code construction, encoding
+ * and decoding of {@code size} bytes. Encoding uses the kernels selected at
+ * start-up; {@link KernelBenchmark} compares them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+
+	@Param({ Corpus.UNIFORM, Corpus.TEXT, Corpus.LOG, Corpus.BINARY })
+	public String corpus;
+
+	@Param({ "1048576" })
+	public int size;
+
+	private byte[] data;
+	private long[] counts;
+	private CodeTable table;
+	private byte[] packed;
+	private long bitLength;
+	private TableDecoder decoder;
+	private int[] symbols;
+	private byte[] streams;
+	private int[] starts;
+	private byte[] out;
+
+	@Setup
+	public void setup() {
+		data = Corpus.generate(corpus, size);
+		counts = new long[256];
+		Histogram.count(data, 0, data.length, counts);
+		table = new HuffmanCompressor().code(counts).table();
+		BitWriter bits = new BitWriter(data.length);
+		table.encode(data, 0, data.length, bits);
+		packed = bits.toByteArray();
+		bitLength = bits.bitLength();
+		decoder = new TableDecoder(table);
+		symbols = new int[HuffmanCompressor.BUFFER_SIZE];
+
+		int quarter = TableDecoder.quarter(data.length);
+		ByteArrayOutputStream interleaved = new ByteArrayOutputStream();
+		starts = new int[TableDecoder.STREAMS + 1];
+		for (int s = 0; s < TableDecoder.STREAMS; s++) {
+			int from = Math.min(s * quarter, data.length);
+			int to = s == TableDecoder.STREAMS - 1 ? data.length : Math.min(from + quarter, data.length);
+			BitWriter stream = new BitWriter(to - from);
+			table.encode(data, from, to - from, stream);
+			byte[] bytes = stream.toByteArray();
+			interleaved.write(bytes, 0, bytes.length);
+			starts[s + 1] = interleaved.size();
+		}
+		streams = interleaved.toByteArray();
+		out = new byte[data.length];
+	}
+
+	@Benchmark
+	public long[] count() {
+		long[] c = new long[256];
+		Histogram.count(data, 0, data.length, c);
+		return c;
+	}
+
+	@Benchmark
+	public CodeTable build() {
+		return new HuffmanCompressor().code(counts).table();
+	}
+
+	@Benchmark
+	public long encode() {
+		BitWriter bits = new BitWriter(data.length);
+		table.encode(data, 0, data.length, bits);
+		return bits.bitLength();
+	}
+
+	@Benchmark
+	public long decode() {
+		BitReader in = new BitReader(packed, bitLength);
+		long total = 0;
+		int n;
+		while ((n = decoder.decode(in, symbols, 0, symbols.length)) > 0)
+			total += n;
+		return total;
+	}
+
+	@Benchmark
+	public byte[] decodeInterleaved() {
+		if (!decoder.decodeInterleaved(streams, starts, out, 0, out.length))
+			throw new IllegalStateException();
+		return out;
+	}
+}
@@ -0,0 +1,70 @@
+package huffman;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The stages of the {@link Huffman} String API that the form uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringApiBenchmark {
+
+	@Param({ Corpus.UNIFORM, Corpus.TEXT, Corpus.LOG, Corpus.BINARY })
+	public String corpus;
+
+	@Param({ "65536" })
+	public int size;
+
+	private String text;
+	private Huffman huffman;
+	private List<Node> leaves;
+	private String bits;
+
+	@Setup
+	public void setup() {
+		text = new String(Corpus.generate(corpus, size), StandardCharsets.ISO_8859_1);
+		huffman = new Huffman(text, true, true);
+		leaves = huffman.satistic(text);
+		bits = huffman.getDecoding();
+	}
+
+	@Benchmark
+	public List<Node> satistic() {
+		return huffman.satistic(text);
+	}
+
+	@Benchmark
+	public Node buildHuffmanTree() {
+		HuffmanTree tree = new HuffmanTree();
+		tree.build(leaves, huffman.higherPercentInLeft);
+		return tree.root;
+	}
+
+	@Benchmark
+	public String getDecoding() {
+		return huffman.getDecoding();
+	}
+
+	@Benchmark
+	public String getEncoding() {
+		return huffman.getEncoding(bits);
+	}
+}
@@ -0,0 +1,127 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompresses a stream of {@link AdaptiveHuffmanOutputStream}. Input is
+ * read no further than the codes need, so the bytes before a FLUSH marker
+ * are returned without waiting for the sender to write more.
+ */
+public class AdaptiveHuffmanInputStream extends FilterInputStream {
+	private final AdaptiveModel model = new AdaptiveModel();
+	private boolean started;
+	private boolean finished;
+	private int bits;
+	private int count;
+
+	public AdaptiveHuffmanInputStream(InputStream in) {
+		super(new BufferedInputStream(in, HuffmanCompressor.BUFFER_SIZE));
+	}
+
+	@Override
+	public int read() throws IOException {
+		while (true) {
+			int symbol = decode();
+			if (symbol != AdaptiveModel.FLUSH)
+				return symbol;
+		}
+	}
+
+	/**
+	 * Reads up to {@code len} bytes, stopping early at a FLUSH marker since
+	 * the sender may not write more for a while.
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+		int n = 0;
+		while (n < len) {
+			int symbol = decode();
+			if (symbol < 0)
+				return n == 0 ? -1 : n;
+			if (symbol == AdaptiveModel.FLUSH) {
+				if (n > 0)
+					return n;
+				continue;
+			}
+			b[off + n++] = (byte) symbol;
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && read() >= 0)
+			skipped++;
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return 0;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * Returns the next byte, FLUSH, or -1 after the EOF marker.
+	 */
+	private int decode() throws IOException {
+		if (finished)
+			return -1;
+		if (!started) {
+			if (HuffmanCompressor.readInt(in) != AdaptiveHuffmanOutputStream.MAGIC)
+				throw new IOException("Not an adaptive Huffman stream");
+			started = true;
+		}
+		int p = AdaptiveModel.ROOT;
+		while (!model.isLeaf(p))
+			p = model.child(p, readBit());
+		int symbol = model.symbol(p);
+		if (symbol < 0) {
+			symbol = 0;
+			for (int i = 0; i < AdaptiveModel.SYMBOL_BITS; i++)
+				symbol = symbol << 1 | readBit();
+			if (symbol > AdaptiveModel.FLUSH || model.isKnown(symbol))
+				throw new IOException("Invalid new symbol " + symbol);
+		}
+		model.update(symbol);
+		if (symbol == AdaptiveModel.FLUSH) {
+			count = 0;
+		} else if (symbol == AdaptiveModel.EOF) {
+			finished = true;
+			return -1;
+		}
+		return symbol;
+	}
+
+	private int readBit() throws IOException {
+		if (count == 0) {
+			bits = in.read();
+			if (bits < 0)
+				throw new EOFException("Stream ends inside a code");
+			count = 8;
+		}
+		return bits >>> --count & 1;
+	}
+}
@@ -0,0 +1,114 @@
+package huffman;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses a stream in one pass with an {@link AdaptiveModel}, for live
+ * streams that cannot be counted before they are coded. {@link #flush()}
+ * codes a FLUSH marker and pads to a whole byte, so everything written so far
+ * can be decoded by the other side before more arrives; {@link #close()}
+ * ends the stream with an EOF marker.
+ *
+ * Format: the magic "HUFA", then the adaptive codes.
+ */
+public class AdaptiveHuffmanOutputStream extends FilterOutputStream {
+	static final int MAGIC = 0x48554641;
+
+	private final AdaptiveModel model = new AdaptiveModel();
+	private final byte[] buffer = new byte[HuffmanCompressor.BUFFER_SIZE];
+	private int size;
+	private int bits;
+	private int count;
+	private boolean pending;
+	private boolean closed;
+
+	public AdaptiveHuffmanOutputStream(OutputStream out) throws IOException {
+		super(out);
+		HuffmanCompressor.writeInt(out, MAGIC);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+		encode(b & 0xFF);
+		pending = true;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (closed)
+			throw new IOException("Stream closed");
+		for (int i = off; i < off + len; i++)
+			encode(b[i] & 0xFF);
+		pending |= len > 0;
+	}
+
+	/**
+	 * Sends every byte written so far. Does nothing to the code when nothing
+	 * was written since the last flush.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (closed)
+			return;
+		if (pending) {
+			encode(AdaptiveModel.FLUSH);
+			pad();
+			pending = false;
+		}
+		drain();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		try {
+			encode(AdaptiveModel.EOF);
+			pad();
+			drain();
+			out.flush();
+		} finally {
+			closed = true;
+			out.close();
+		}
+	}
+
+	private void encode(int symbol) throws IOException {
+		int n = model.code(symbol);
+		for (int i = 0; i < n; i++)
+			writeBit(model.bit(i));
+		if (!model.isKnown(symbol)) {
+			for (int i = AdaptiveModel.SYMBOL_BITS - 1; i >= 0; i--)
+				writeBit(symbol >>> i & 1);
+		}
+		model.update(symbol);
+	}
+
+	private void writeBit(int bit) throws IOException {
+		bits = bits << 1 | bit;
+		if (++count == 8) {
+			if (size == buffer.length)
+				drain();
+			buffer[size++] = (byte) bits;
+			bits = 0;
+			count = 0;
+		}
+	}
+
+	private void pad() throws IOException {
+		while (count != 0)
+			writeBit(0);
+	}
+
+	private void drain() throws IOException {
+		out.write(buffer, 0, size);
+		size = 0;
+	}
+}
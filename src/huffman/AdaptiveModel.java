@@ -0,0 +1,131 @@
+package huffman;
+
+import java.util.Arrays;
+
+/**
+ * Adaptive Huffman tree of the FGK algorithm, updated after every symbol so
+ * that an encoder and a decoder that see the same symbols keep the same
+ * tree without a table being sent. A symbol seen for the first time is sent
+ * as the code of the NYT ("not yet transmitted") leaf followed by the symbol
+ * in {@link #SYMBOL_BITS} bits.
+ *
+ * Nodes are stored by their FGK number: position 0 is the root, weights never
+ * increase with the position and siblings sit at adjacent positions, the left
+ * one first. Swapping two nodes only swaps what the two positions hold.
+ */
+final class AdaptiveModel {
+	static final int EOF = 256;
+	static final int FLUSH = 257;
+	static final int SYMBOL_BITS = 9;
+	static final int ROOT = 0;
+	private static final int NYT = 258;
+	private static final int SYMBOLS = NYT + 1;
+
+	private final long[] weight = new long[2 * SYMBOLS - 1];
+	private final int[] parent = new int[2 * SYMBOLS - 1];
+	/* position of the left child, or the complement of the symbol of a leaf */
+	private final int[] node = new int[2 * SYMBOLS - 1];
+	private final int[] leaf = new int[SYMBOLS];
+	private final int[] path = new int[SYMBOLS];
+
+	AdaptiveModel() {
+		Arrays.fill(leaf, -1);
+		node[ROOT] = ~NYT;
+		parent[ROOT] = -1;
+		leaf[NYT] = ROOT;
+	}
+
+	/**
+	 * Returns the number of bits of the code of {@code symbol} or, when the
+	 * symbol is new, of the NYT code, stored from the first bit on in
+	 * {@link #bit(int)}.
+	 */
+	int code(int symbol) {
+		int p = leaf[symbol] >= 0 ? leaf[symbol] : leaf[NYT];
+		int n = 0;
+		while (p != ROOT) {
+			path[n++] = p - node[parent[p]];
+			p = parent[p];
+		}
+		for (int i = 0, j = n - 1; i < j; i++, j--) {
+			int t = path[i];
+			path[i] = path[j];
+			path[j] = t;
+		}
+		return n;
+	}
+
+	int bit(int i) {
+		return path[i];
+	}
+
+	boolean isKnown(int symbol) {
+		return leaf[symbol] >= 0;
+	}
+
+	/**
+	 * Follows one bit down from the internal node at {@code position}.
+	 */
+	int child(int position, int bit) {
+		return node[position] + bit;
+	}
+
+	boolean isLeaf(int position) {
+		return node[position] < 0;
+	}
+
+	/**
+	 * Returns the symbol of a leaf, or -1 for the NYT leaf.
+	 */
+	int symbol(int position) {
+		int symbol = ~node[position];
+		return symbol == NYT ? -1 : symbol;
+	}
+
+	/**
+	 * Counts one more {@code symbol}, adding a leaf for it first when it is
+	 * new.
+	 */
+	void update(int symbol) {
+		int p = leaf[symbol];
+		if (p < 0) {
+			int z = leaf[NYT];
+			node[z] = z + 1;
+			node[z + 1] = ~symbol;
+			node[z + 2] = ~NYT;
+			parent[z + 1] = z;
+			parent[z + 2] = z;
+			leaf[symbol] = z + 1;
+			leaf[NYT] = z + 2;
+			p = z + 1;
+		}
+		while (p >= 0) {
+			int leader = p;
+			while (leader > ROOT && weight[leader - 1] == weight[p])
+				leader--;
+			if (leader != p && leader != parent[p]) {
+				swap(p, leader);
+				p = leader;
+			}
+			weight[p]++;
+			p = parent[p];
+		}
+	}
+
+	private void swap(int p, int q) {
+		int t = node[p];
+		node[p] = node[q];
+		node[q] = t;
+		attach(p);
+		attach(q);
+	}
+
+	private void attach(int p) {
+		if (node[p] < 0) {
+			leaf[~node[p]] = p;
+		} else {
+			parent[node[p]] = p;
+			parent[node[p] + 1] = p;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Reads a packed bitstream most significant bit first. Bits are kept in a
+ * 64-bit window so that {@link #peek(int)} and {@link #skip(int)} do not touch
+ * the backing array for every bit.
+ */
+final class BitReader {
+	private final byte[] data;
+	private final InputStream source;
+	private long bitLength;
+	private int limit;
+	private int nextByte;
+	private long window;
+	private int windowBits;
+	private long position;
+
+	public BitReader(byte[] data, long bitLength) {
+		this(data, 0, bitLength);
+	}
+
+	public BitReader(byte[] data, int offset, long bitLength) {
+		this.data = data;
+		this.source = null;
+		this.bitLength = bitLength;
+		this.limit = data.length;
+		this.nextByte = offset;
+		refill();
+	}
+
+	/**
+	 * Reads from a stream through a fixed size buffer. The length of the
+	 * stream is not known until its end has been read into the window, so
+	 * the caller has to know how many symbols to decode; from then on
+	 * {@link #remaining()} counts the bits left, and bits past the end read
+	 * as zero.
+	 */
+	public BitReader(InputStream source, int bufferSize) {
+		this.data = new byte[bufferSize];
+		this.source = source;
+		this.bitLength = Long.MAX_VALUE;
+		refill();
+	}
+
+	/**
+	 * Packs a string of '0' and '1' characters. Whitespace is ignored and
+	 * packing stops at the first other character.
+	 */
+	public static BitReader of(CharSequence bits) {
+		byte[] data = new byte[(bits.length() + 7) >>> 3];
+		long n = 0;
+		for (int i = 0; i < bits.length(); i++) {
+			char c = bits.charAt(i);
+			if (c == '1') {
+				data[(int) (n >>> 3)] |= 0x80 >>> (n & 7);
+			} else if (c != '0') {
+				if (Character.isWhitespace(c))
+					continue;
+				break;
+			}
+			n++;
+		}
+		return new BitReader(data, n);
+	}
+
+	private void refill() {
+		while (windowBits <= 56) {
+			if (nextByte == limit && !fill())
+				return;
+			window |= (data[nextByte++] & 0xFFL) << (56 - windowBits);
+			windowBits += 8;
+		}
+	}
+
+	private boolean fill() {
+		if (source == null)
+			return false;
+		try {
+			int n = source.read(data, 0, data.length);
+			if (n <= 0) {
+				// the end is known now: the bits read so far and those in the window
+				if (bitLength == Long.MAX_VALUE)
+					bitLength = position + windowBits;
+				return false;
+			}
+			limit = n;
+			nextByte = 0;
+			return true;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Returns the next {@code n} bits (at most 32) without consuming them.
+	 * Bits past the end of the stream read as zero.
+	 */
+	public int peek(int n) {
+		return (int) (window >>> (64 - n));
+	}
+
+	public void skip(int n) {
+		window <<= n;
+		windowBits -= n;
+		position += n;
+		if (windowBits <= 56)
+			refill();
+	}
+
+	public void skipRemaining() {
+		position = bitLength;
+		nextByte = limit;
+		window = 0;
+		windowBits = 0;
+	}
+
+	public int readBit() {
+		int bit = (int) (window >>> 63);
+		skip(1);
+		return bit;
+	}
+
+	public long remaining() {
+		return bitLength - position;
+	}
+
+	public long position() {
+		return position;
+	}
+}
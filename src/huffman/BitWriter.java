@@ -0,0 +1,182 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Packs codes most significant bit first into a growing byte array, or
+ * straight into a {@link ByteBuffer} such as a mapped file. Codes are gathered
+ * in a 64-bit accumulator and stored four bytes at a time.
+ */
+final class BitWriter {
+	private ByteBuffer target;
+	private byte[] buffer;
+	private int size;
+	private long drained;
+	private long bits;
+	private int count;
+
+	public BitWriter() {
+		this(64);
+	}
+
+	public BitWriter(int capacity) {
+		buffer = new byte[Math.max(capacity, 8)];
+	}
+
+	/**
+	 * Writes whole words to {@code target}, which must stay big-endian and
+	 * have room for them; see {@link #setTarget(ByteBuffer)}.
+	 */
+	public BitWriter(ByteBuffer target) {
+		this(8);
+		this.target = target;
+	}
+
+	/**
+	 * Continues writing into another buffer, e.g. the next window of a file
+	 * mapped piece by piece. Bits already gathered carry over.
+	 */
+	public void setTarget(ByteBuffer target) {
+		this.target = target;
+	}
+
+	/**
+	 * Appends the low {@code length} bits of {@code code}, at most 32.
+	 */
+	public void write(int code, int length) {
+		bits = bits << length | (code & 0xFFFFFFFFL);
+		count += length;
+		if (count >= 32) {
+			count -= 32;
+			putInt((int) (bits >>> count));
+		}
+	}
+
+	/**
+	 * Appends {@code len} whole bytes of {@code b}, four at a time.
+	 */
+	public void write(byte[] b, int off, int len) {
+		int i = off, end = off + len;
+		for (; i + 3 < end; i += 4)
+			write((b[i] & 0xFF) << 24 | (b[i + 1] & 0xFF) << 16 | (b[i + 2] & 0xFF) << 8 | b[i + 3] & 0xFF, 32);
+		for (; i < end; i++)
+			write(b[i] & 0xFF, 8);
+	}
+
+	private void putInt(int word) {
+		if (target != null) {
+			target.putInt(word);
+			drained += 4;
+			return;
+		}
+		if (size + 4 > buffer.length)
+			grow();
+		buffer[size] = (byte) (word >>> 24);
+		buffer[size + 1] = (byte) (word >>> 16);
+		buffer[size + 2] = (byte) (word >>> 8);
+		buffer[size + 3] = (byte) word;
+		size += 4;
+	}
+
+	private void grow() {
+		byte[] grown = new byte[buffer.length * 2];
+		System.arraycopy(buffer, 0, grown, 0, size);
+		buffer = grown;
+	}
+
+	public long bitLength() {
+		return (drained + size) * 8 + count;
+	}
+
+	public int bufferedBytes() {
+		return size;
+	}
+
+	/**
+	 * Moves the complete bytes written so far to {@code out}, so that a
+	 * stream can be encoded in a buffer of fixed size. Fewer than 32 bits
+	 * stay behind in the accumulator.
+	 */
+	public void drainTo(OutputStream out) throws IOException {
+		out.write(buffer, 0, size);
+		drained += size;
+		size = 0;
+	}
+
+	/**
+	 * Writes the bits written and not drained to {@code out}, the last byte
+	 * padded with zeros, the same bytes as {@link #toByteArray()}.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		// the tail goes past size, so that everything is written at once
+		if (size + 4 > buffer.length)
+			grow();
+		int end = size + (count + 7) / 8;
+		long tail = bits << (64 - count);
+		for (int i = size; i < end; i++, tail <<= 8)
+			buffer[i] = (byte) (tail >>> 56);
+		out.write(buffer, 0, end);
+	}
+
+	/**
+	 * Appends the bits written to {@code other} and not drained, its last
+	 * byte padded with zeros.
+	 */
+	public void write(BitWriter other) {
+		write(other.buffer, 0, other.size);
+		long tail = other.bits << (64 - other.count);
+		for (int i = 0; i < (other.count + 7) / 8; i++, tail <<= 8)
+			write((int) (tail >>> 56), 8);
+	}
+
+	/**
+	 * Overwrites the four bytes at {@code index}, which must have been
+	 * written and not drained, e.g. a length reserved before the bits it
+	 * counts.
+	 */
+	public void setInt(int index, int value) {
+		if (index < 0 || index + 4 > size)
+			throw new IndexOutOfBoundsException();
+		buffer[index] = (byte) (value >>> 24);
+		buffer[index + 1] = (byte) (value >>> 16);
+		buffer[index + 2] = (byte) (value >>> 8);
+		buffer[index + 3] = (byte) value;
+	}
+
+	/**
+	 * Forgets everything written, keeping the buffer for the next use.
+	 */
+	public void reset() {
+		size = 0;
+		drained = 0;
+		bits = 0;
+		count = 0;
+	}
+
+	/**
+	 * Returns the bits written and not drained, the last byte padded with
+	 * zeros.
+	 */
+	public byte[] toByteArray() {
+		byte[] data = new byte[size + (count + 7) / 8];
+		System.arraycopy(buffer, 0, data, 0, size);
+		long tail = bits << (64 - count);
+		for (int i = size; i < data.length; i++, tail <<= 8)
+			data[i] = (byte) (tail >>> 56);
+		return data;
+	}
+
+	/**
+	 * Returns the bits written and not drained as '0' and '1' characters.
+	 */
+	public String toBitString() {
+		long n = bitLength() - drained * 8;
+		byte[] data = toByteArray();
+		StringBuilder sb = new StringBuilder((int) n);
+		for (long i = 0; i < n; i++)
+			sb.append((data[(int) (i >>> 3)] & (0x80 >>> (i & 7))) == 0 ? '0' : '1');
+		return sb + "";
+	}
+}
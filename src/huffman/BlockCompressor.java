@@ -0,0 +1,621 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.zip.Checksum;
+
+import huffman.CodecMetrics.Stage;
+
+/**
+ * Splits the input into fixed size blocks and compresses every block with its
+ * own code on a {@link ForkJoinPool}. Blocks are read and written in order
+ * while up to a few blocks per worker are encoded or decoded at once.
+ *
+ * Format: the magic "HUFB" and the block size, then every block as its
+ * original length, its compressed length, the {@link CanonicalCode} header
+ * and the packed codes. A 0 length ends the blocks and is followed by the
+ * block count and the offset of every block, then by the offset of that
+ * index and the magic "HUFI", so that a file can be decoded in parallel
+ * straight from the index.
+ *
+ * Interleaved files start with "HUF4" instead. The codes of every block are
+ * split into four streams, one per quarter of the block, written after the
+ * header as the byte lengths of the first three and then the four streams,
+ * so that the decoder can advance four independent bit readers at once.
+ *
+ * Checked files, the default, start with "HUFK", the block size, a flags
+ * byte (1 for interleaved blocks) and the id of a checksum algorithm, and
+ * every payload starts with the checksum of the block's original bytes.
+ * The checksum is updated as the decoder produces the bytes, while they are
+ * still in cache, and a block that does not match is never written out.
+ */
+public class BlockCompressor {
+	static final int MAGIC = 0x48554642;
+	static final int INDEX_MAGIC = 0x48554649;
+	static final int INTERLEAVED_MAGIC = 0x48554634;
+	static final int CHECKED_MAGIC = 0x4855464B;
+	static final int CHECKED_HEADER_SIZE = 10;
+	static final int INTERLEAVED = 1;
+	static final int HEADER_SIZE = 8;
+	static final int FOOTER_SIZE = 12;
+	/* checksum, code length header of 256 symbols, stream lengths and padding */
+	private static final int MAX_PAYLOAD_OVERHEAD = 1024;
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	private final HuffmanCompressor compressor;
+	private final int blockSize;
+	private final ForkJoinPool pool;
+	private CodecMetrics metrics = CodecMetrics.disabled();
+	private boolean interleaved;
+	private int checksum = Checksums.PREFERRED;
+	private Consumer<? super CorruptBlockException> corruptBlockHandler;
+
+	public BlockCompressor() {
+		this(DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	public BlockCompressor(int blockSize, ForkJoinPool pool) {
+		this(blockSize, pool, CodeTable.MAX_LENGTH);
+	}
+
+	/**
+	 * Limits the codes of every block to {@code maxCodeLength} bits.
+	 */
+	public BlockCompressor(int blockSize, ForkJoinPool pool, int maxCodeLength) {
+		if (blockSize <= 0)
+			throw new IllegalArgumentException("Block size must be positive");
+		this.compressor = new HuffmanCompressor(true, true, maxCodeLength);
+		this.blockSize = blockSize;
+		this.pool = pool;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public CodecMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Records the stages of every block in {@code metrics}.
+	 */
+	public void setMetrics(CodecMetrics metrics) {
+		this.metrics = metrics;
+		compressor.setMetrics(metrics);
+	}
+
+	public boolean isInterleaved() {
+		return interleaved;
+	}
+
+	/**
+	 * Writes every block as four interleaved streams, which decode faster
+	 * at the cost of a few bytes per block. Decompression reads both forms.
+	 */
+	public void setInterleaved(boolean interleaved) {
+		this.interleaved = interleaved;
+	}
+
+	public boolean isChecked() {
+		return checksum != Checksums.NONE;
+	}
+
+	/**
+	 * Stores a checksum of every block, CRC32C where the JVM has it and
+	 * CRC32 otherwise; on by default. Without checksums the files can be read
+	 * by older versions.
+	 */
+	public void setChecked(boolean checked) {
+		this.checksum = checked ? Checksums.PREFERRED : Checksums.NONE;
+	}
+
+	/**
+	 * Makes decompression leave out blocks that cannot be decoded or fail
+	 * their checksum and pass them to {@code handler}, instead of failing on
+	 * the first one. The stream decoder writes nothing for such a block; the
+	 * file decoder leaves its range of the output unwritten. A stream cut
+	 * short still fails. With null, the default, decompression fails fast.
+	 */
+	public void setCorruptBlockHandler(Consumer<? super CorruptBlockException> handler) {
+		this.corruptBlockHandler = handler;
+	}
+
+	private int window() {
+		return 2 * pool.getParallelism() + 1;
+	}
+
+	public void compress(InputStream input, OutputStream output) throws IOException {
+		long position = writeHeader(output);
+		List<Long> offsets = new ArrayList<>();
+		Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+		Deque<Integer> lengths = new ArrayDeque<>();
+		while (true) {
+			final byte[] block = new byte[blockSize];
+			final int length = readFully(input, block);
+			if (length > 0) {
+				pending.add(pool.submit(() -> encodeBlock(block, 0, length)));
+				lengths.add(length);
+			}
+			boolean last = length < blockSize;
+			while (!pending.isEmpty() && (last || pending.size() >= window())) {
+				byte[] payload = pending.poll().join();
+				offsets.add(position);
+				HuffmanCompressor.writeInt(output, lengths.poll());
+				HuffmanCompressor.writeInt(output, payload.length);
+				output.write(payload);
+				position += 8 + payload.length;
+			}
+			if (last)
+				break;
+		}
+		writeIndex(output, offsets, position);
+		output.flush();
+	}
+
+	/**
+	 * Writes the header for the current settings and returns its size.
+	 */
+	int writeHeader(OutputStream output) throws IOException {
+		if (checksum == Checksums.NONE) {
+			HuffmanCompressor.writeInt(output, interleaved ? INTERLEAVED_MAGIC : MAGIC);
+			HuffmanCompressor.writeInt(output, blockSize);
+			return HEADER_SIZE;
+		}
+		HuffmanCompressor.writeInt(output, CHECKED_MAGIC);
+		HuffmanCompressor.writeInt(output, blockSize);
+		output.write(interleaved ? INTERLEAVED : 0);
+		output.write(checksum);
+		return CHECKED_HEADER_SIZE;
+	}
+
+	/**
+	 * Ends the blocks and writes the index of the blocks at {@code offsets},
+	 * the end of the last one being at {@code position}.
+	 */
+	static void writeIndex(OutputStream output, List<Long> offsets, long position) throws IOException {
+		HuffmanCompressor.writeInt(output, 0);
+		HuffmanCompressor.writeInt(output, offsets.size());
+		for (long offset : offsets)
+			writeLong(output, offset);
+		writeLong(output, position);
+		HuffmanCompressor.writeInt(output, INDEX_MAGIC);
+	}
+
+	public void decompress(InputStream input, OutputStream output) throws IOException {
+		final Header header = Header.read(input);
+		long position = header.size;
+		Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+		boolean end = false;
+		for (int block = 0; !end || !pending.isEmpty(); block++) {
+			if (!end) {
+				final int length = HuffmanCompressor.readInt(input);
+				if (length == 0) {
+					end = true;
+				} else {
+					int size = HuffmanCompressor.readInt(input);
+					checkPayload(size, header, block, position);
+					final byte[] payload = new byte[size];
+					if (readFully(input, payload) < payload.length)
+						throw new CorruptBlockException("Block is cut short", block, position, null);
+					final int index = block;
+					final long offset = position;
+					pending.add(pool.submit(() -> {
+						checkLength(length, header, index, offset);
+						return decodeBlock(payload, length, header, index, offset);
+					}));
+					position += 8 + payload.length;
+				}
+			}
+			while (!pending.isEmpty() && (end || pending.size() >= window())) {
+				byte[] data = joinBlock(pending.poll());
+				if (data != null)
+					output.write(data);
+			}
+		}
+		output.flush();
+	}
+
+	/**
+	 * Decodes a file through its block index: every block is read, decoded
+	 * and written at its own offset by a separate task, with the same number
+	 * of blocks in flight as the stream decoder. Blocks may be shorter than
+	 * the block size, as {@link HuffmanOutputStream#flush()} writes them, so
+	 * the offsets come from the lengths of the blocks before. After a block
+	 * whose length is damaged no offset is known, so that block and every
+	 * block after it are reported corrupt and left unwritten.
+	 */
+	public void decompress(Path input, Path output) throws IOException {
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer start = read(in, 0, (int) Math.min(in.size(), CHECKED_HEADER_SIZE));
+			final Header header = Header.read(new ByteArrayInputStream(start.array()));
+			final long[] offsets = readIndex(in);
+			Deque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+			try {
+				long next = 0;
+				for (int i = 0; i < offsets.length; i++) {
+					final int block = i;
+					if (offsets[block] < header.size || offsets[block] > in.size() - 8)
+						throw new CorruptBlockException("Offset is outside the file", block, offsets[block], null);
+					ByteBuffer lengths = read(in, offsets[block], 8);
+					final int length = lengths.getInt();
+					final int size = lengths.getInt();
+					checkPayload(size, header, block, offsets[block]);
+					if (size > in.size() - offsets[block] - 8)
+						throw new CorruptBlockException("Block is cut short", block, offsets[block], null);
+					if (length <= 0 || length > header.blockSize) {
+						corrupt(new CorruptBlockException("Invalid block length " + length, block, offsets[block],
+								null));
+						for (int after = block + 1; after < offsets.length; after++)
+							corrupt(new CorruptBlockException("Block follows a block of unknown length", after,
+									offsets[after], null));
+						break;
+					}
+					final long first = next;
+					next += length;
+					pending.add(pool.submit(() -> {
+						try {
+							ByteBuffer payload = read(in, offsets[block] + 8, size);
+							ByteBuffer data = ByteBuffer
+									.wrap(decodeBlock(payload.array(), length, header, block, offsets[block]));
+							long position = first;
+							while (data.hasRemaining())
+								position += out.write(data, position);
+						} catch (IOException ex) {
+							throw new UncheckedIOException(ex);
+						}
+					}));
+					while (pending.size() >= window())
+						joinBlock(pending.poll());
+				}
+				while (!pending.isEmpty())
+					joinBlock(pending.poll());
+			} finally {
+				// after a failure, let the blocks in flight finish before the channels close
+				for (ForkJoinTask<?> task : pending)
+					task.quietlyJoin();
+			}
+		}
+	}
+
+	/**
+	 * Layout of a stream as its header gives it.
+	 */
+	static final class Header {
+		int size;
+		int blockSize;
+		boolean interleaved;
+		int checksum;
+
+		static Header read(InputStream in) throws IOException {
+			Header header = new Header();
+			int magic = HuffmanCompressor.readInt(in);
+			header.blockSize = HuffmanCompressor.readInt(in);
+			if (header.blockSize <= 0)
+				throw new IOException("Invalid block size " + header.blockSize);
+			if (magic == CHECKED_MAGIC) {
+				header.size = CHECKED_HEADER_SIZE;
+				int flags = CanonicalCode.readByte(in);
+				header.interleaved = (flags & INTERLEAVED) != 0;
+				header.checksum = CanonicalCode.readByte(in);
+				Checksums.create(header.checksum);
+			} else if (magic == MAGIC || magic == INTERLEAVED_MAGIC) {
+				header.size = HEADER_SIZE;
+				header.interleaved = magic == INTERLEAVED_MAGIC;
+				header.checksum = Checksums.NONE;
+			} else {
+				throw new IOException("Not a block compressed stream");
+			}
+			return header;
+		}
+	}
+
+	/**
+	 * Decodes block number {@code block}, found at {@code offset}, and
+	 * reports any damage as a {@link CorruptBlockException}.
+	 */
+	private byte[] decodeBlock(byte[] payload, int length, Header header, int block, long offset) {
+		byte[] data = new byte[length];
+		decodeBlock(payload, payload.length, data, length, header, block, offset);
+		return data;
+	}
+
+	/**
+	 * Decodes the first {@code size} bytes of {@code payload} into the first
+	 * {@code length} bytes of {@code data}.
+	 */
+	void decodeBlock(byte[] payload, int size, byte[] data, int length, Header header, int block, long offset) {
+		try {
+			decodeBlock(payload, size, data, length, header.interleaved, header.checksum, metrics);
+		} catch (UncheckedIOException ex) {
+			throw new UncheckedIOException(
+					new CorruptBlockException(ex.getCause().getMessage(), block, offset, ex.getCause()));
+		} catch (RuntimeException ex) {
+			// damaged lengths can send the decoder out of its tables
+			throw new UncheckedIOException(new CorruptBlockException(String.valueOf(ex), block, offset, ex));
+		}
+	}
+
+	/**
+	 * Returns the result of a block's task, or null for a corrupt block that
+	 * the handler has been told about.
+	 */
+	private <T> T joinBlock(ForkJoinTask<T> task) throws IOException {
+		try {
+			return join(task);
+		} catch (CorruptBlockException ex) {
+			corrupt(ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Passes a corrupt block to the handler, or throws {@code ex} when there
+	 * is none.
+	 */
+	void corrupt(CorruptBlockException ex) throws CorruptBlockException {
+		if (corruptBlockHandler == null)
+			throw ex;
+		corruptBlockHandler.accept(ex);
+	}
+
+	/**
+	 * Checks the compressed length of the block at {@code offset}. Without
+	 * it the blocks after cannot be found, so a bad one always fails.
+	 */
+	static void checkPayload(int size, Header header, int block, long offset) throws CorruptBlockException {
+		if (size < 0 || size > Math.min(4L * header.blockSize + MAX_PAYLOAD_OVERHEAD, Integer.MAX_VALUE - 8))
+			throw new CorruptBlockException("Invalid compressed length " + size, block, offset, null);
+	}
+
+	/**
+	 * Checks the original length of a block, from a task, so that a bad one
+	 * goes to the handler like any other damage.
+	 */
+	static void checkLength(int length, Header header, int block, long offset) {
+		if (length <= 0 || length > header.blockSize)
+			throw new UncheckedIOException(
+					new CorruptBlockException("Invalid block length " + length, block, offset, null));
+	}
+
+	static long[] readIndex(FileChannel in) throws IOException {
+		long fileSize = in.size();
+		if (fileSize < FOOTER_SIZE + 8)
+			throw new IOException("Block index is missing");
+		ByteBuffer footer = read(in, fileSize - FOOTER_SIZE, FOOTER_SIZE);
+		long indexOffset = footer.getLong();
+		if (footer.getInt() != INDEX_MAGIC)
+			throw new IOException("Block index is missing");
+		if (indexOffset < 0 || indexOffset > fileSize - FOOTER_SIZE - 8)
+			throw new IOException("Block index is corrupt");
+		ByteBuffer count = read(in, indexOffset, 8);
+		if (count.getInt() != 0)
+			throw new IOException("Block index is corrupt");
+		int blocks = count.getInt();
+		if (blocks < 0 || 8L * blocks != fileSize - FOOTER_SIZE - indexOffset - 8)
+			throw new IOException("Block index is corrupt");
+		ByteBuffer index = read(in, indexOffset + 8, 8 * blocks);
+		long[] offsets = new long[index.capacity() / 8];
+		for (int i = 0; i < offsets.length; i++)
+			offsets[i] = index.getLong();
+		return offsets;
+	}
+
+	byte[] encodeBlock(byte[] data, int off, int len) {
+		// room for the header as well when the codes take no more than the bytes
+		BitWriter bits = new BitWriter(len + 1024);
+		encodeBlock(data, off, len, bits, new Scratch());
+		return bits.toByteArray();
+	}
+
+	/**
+	 * Appends the payload of a block to {@code bits}, which must hold whole
+	 * bytes, using the buffers of {@code scratch}.
+	 */
+	void encodeBlock(byte[] data, int off, int len, BitWriter bits, Scratch scratch) {
+		long start = metrics.start();
+		long[] counts = scratch.counts;
+		Arrays.fill(counts, 0);
+		Histogram.count(data, off, len, counts);
+		metrics.stop(Stage.COUNT, start);
+		CanonicalCode code = compressor.code(counts);
+		start = metrics.start();
+		CodeTable table = code.table();
+		metrics.stop(Stage.ASSIGN, start);
+		ByteArrayOutputStream header = scratch.header;
+		header.reset();
+		try {
+			if (checksum != Checksums.NONE) {
+				if (scratch.crc == null)
+					scratch.crc = Checksums.create(checksum);
+				Checksum crc = scratch.crc;
+				crc.reset();
+				crc.update(data, off, len);
+				HuffmanCompressor.writeInt(header, (int) crc.getValue());
+			}
+			code.write(header);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		start = metrics.start();
+		long first = bits.bitLength();
+		if (interleaved) {
+			encodeStreams(data, off, len, table, header, scratch.streams, bits);
+		} else {
+			bits.write(header.toByteArray(), 0, header.size());
+			table.encode(data, off, len, bits);
+		}
+		metrics.stop(Stage.ENCODE, start);
+		metrics.bytes(len, 8 + (bits.bitLength() - first + 7) / 8);
+	}
+
+	private static void encodeStreams(byte[] data, int off, int len, CodeTable table, ByteArrayOutputStream header,
+			BitWriter[] streams, BitWriter out) {
+		int quarter = TableDecoder.quarter(len);
+		// the last stream needs no length and goes straight to out
+		for (int s = 0; s < streams.length; s++) {
+			int from = Math.min(s * quarter, len);
+			int to = Math.min(from + quarter, len);
+			streams[s].reset();
+			table.encode(data, off + from, to - from, streams[s]);
+		}
+		try {
+			for (BitWriter stream : streams)
+				CanonicalCode.writeVarint(header, (stream.bitLength() + 7) >>> 3);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		out.write(header.toByteArray(), 0, header.size());
+		for (BitWriter stream : streams)
+			out.write(stream);
+		int from = Math.min(streams.length * quarter, len);
+		table.encode(data, off + from, len - from, out);
+	}
+
+	/**
+	 * Buffers that {@link #encodeBlock(byte[], int, int, BitWriter, Scratch)}
+	 * clears and fills for each block, so that a caller coding one block
+	 * after another can keep them. Not safe for use by several threads.
+	 */
+	static final class Scratch {
+		final long[] counts = new long[256];
+		final ByteArrayOutputStream header = new ByteArrayOutputStream();
+		final BitWriter[] streams = new BitWriter[TableDecoder.STREAMS - 1];
+		Checksum crc;
+
+		Scratch() {
+			for (int s = 0; s < streams.length; s++)
+				streams[s] = new BitWriter();
+		}
+	}
+
+	/**
+	 * Decodes a payload and, unless {@code checksum} is
+	 * {@link Checksums#NONE}, checks the decoded bytes against the checksum
+	 * the payload starts with.
+	 */
+	static void decodeBlock(byte[] payload, int size, byte[] data, int length, boolean interleaved, int checksum,
+			CodecMetrics metrics) {
+		long start = metrics.start();
+		try {
+			ByteArrayInputStream in = new ByteArrayInputStream(payload, 0, size);
+			Checksum crc = null;
+			int expected = 0;
+			if (checksum != Checksums.NONE) {
+				crc = Checksums.create(checksum);
+				expected = HuffmanCompressor.readInt(in);
+			}
+			CanonicalCode code = CanonicalCode.read(in);
+			if (code.lengths.length > 256)
+				throw new IOException("Code length header is not for bytes");
+			if (interleaved) {
+				int[] starts = new int[TableDecoder.STREAMS + 1];
+				for (int s = 1; s < TableDecoder.STREAMS; s++)
+					starts[s] = CanonicalCode.readVarint(in);
+				starts[0] = size - in.available();
+				for (int s = 1; s < TableDecoder.STREAMS; s++) {
+					starts[s] += starts[s - 1];
+					if (starts[s] < starts[s - 1] || starts[s] > size)
+						throw new EOFException("Block is cut short");
+				}
+				starts[TableDecoder.STREAMS] = size;
+				if (!new TableDecoder(code.table()).decodeInterleaved(payload, starts, data, 0, length))
+					throw new IOException("Block is damaged");
+				if (crc != null) {
+					crc.update(data, 0, length);
+					verify(crc, expected);
+				}
+				metrics.stop(Stage.DECODE, start);
+				metrics.bytes(length, 8 + size);
+				return;
+			}
+			int offset = size - in.available();
+			BitReader bits = new BitReader(payload, offset, (size - offset) * 8L);
+			TableDecoder decoder = new TableDecoder(code.table());
+			int[] symbols = new int[Math.min(length, HuffmanCompressor.BUFFER_SIZE)];
+			int done = 0;
+			while (done < length) {
+				int n = decoder.decode(bits, symbols, 0, Math.min(length - done, symbols.length));
+				if (n == 0)
+					throw new EOFException("Block ends " + (length - done) + " bytes early");
+				for (int i = 0; i < n; i++)
+					data[done + i] = (byte) symbols[i];
+				if (crc != null)
+					crc.update(data, done, n);
+				done += n;
+			}
+			if (crc != null)
+				verify(crc, expected);
+			metrics.stop(Stage.DECODE, start);
+			metrics.bytes(length, 8 + size);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private static void verify(Checksum crc, int expected) throws IOException {
+		if ((int) crc.getValue() != expected)
+			throw new IOException(String.format("Checksum is %08x instead of %08x", (int) crc.getValue(), expected));
+	}
+
+	private static <T> T join(ForkJoinTask<T> task) throws IOException {
+		try {
+			return task.join();
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	static ByteBuffer read(FileChannel in, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (in.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("Unexpected end of file");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	static int readFully(InputStream in, byte[] buffer) throws IOException {
+		return readFully(in, buffer, 0, buffer.length);
+	}
+
+	/**
+	 * Reads {@code len} bytes unless the stream ends first, and returns how
+	 * many were read.
+	 */
+	static int readFully(InputStream in, byte[] buffer, int off, int len) throws IOException {
+		int n = 0;
+		while (n < len) {
+			int read = in.read(buffer, off + n, len - n);
+			if (read < 0)
+				break;
+			n += read;
+		}
+		return n;
+	}
+
+	static void writeLong(OutputStream out, long value) throws IOException {
+		HuffmanCompressor.writeInt(out, (int) (value >>> 32));
+		HuffmanCompressor.writeInt(out, (int) value);
+	}
+}
@@ -0,0 +1,167 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Canonical Huffman code: only the code length of every symbol is kept and
+ * the codes are rebuilt from the lengths, shorter codes first and symbols of
+ * equal length in increasing order.
+ *
+ * Serialized as a flags byte, the number of coded symbols, then a
+ * (symbol gap, length) pair for each of them in increasing symbol order, with
+ * the counts and gaps written as unsigned varints.
+ */
+final class CanonicalCode {
+	private static final int HIGHER_PERCENT_IN_LEFT = 1;
+	private static final int ONE_ON_RIGHT = 2;
+
+	final byte[] lengths;
+	final boolean higherPercentInLeft;
+	final boolean isOneOnRight;
+
+	CanonicalCode(byte[] lengths, boolean higherPercentInLeft, boolean isOneOnRight) {
+		this.lengths = lengths;
+		this.higherPercentInLeft = higherPercentInLeft;
+		this.isOneOnRight = isOneOnRight;
+	}
+
+	int maxLength() {
+		int max = 0;
+		for (byte length : lengths)
+			max = Math.max(max, length);
+		return max;
+	}
+
+	/**
+	 * Assigns the codes in time linear in the number of symbols. Canonical
+	 * codes put the shortest codes on the all-zero side of the tree; the
+	 * codes are complemented when the options ask for that side to be the
+	 * other one.
+	 */
+	CodeTable table() {
+		int[] count = new int[CodeTable.MAX_LENGTH + 1];
+		for (byte length : lengths) {
+			if (length > CodeTable.MAX_LENGTH)
+				throw new IllegalStateException("Code is longer than " + CodeTable.MAX_LENGTH + " bits");
+			count[length]++;
+		}
+		count[0] = 0;
+		long[] next = new long[CodeTable.MAX_LENGTH + 1];
+		long code = 0;
+		for (int length = 1; length <= CodeTable.MAX_LENGTH; length++) {
+			code = (code + count[length - 1]) << 1;
+			next[length] = code;
+		}
+		boolean complement = higherPercentInLeft != isOneOnRight;
+		int[] codes = new int[lengths.length];
+		for (int symbol = 0; symbol < lengths.length; symbol++) {
+			int length = lengths[symbol];
+			if (length == 0)
+				continue;
+			long c = next[length]++;
+			if (c >= 1L << length)
+				throw new IllegalArgumentException("Code lengths do not form a prefix code");
+			codes[symbol] = (int) (complement ? ~c & ((1L << length) - 1) : c);
+		}
+		return new CodeTable(codes, lengths);
+	}
+
+	void write(OutputStream out) throws IOException {
+		int n = 0;
+		for (byte length : lengths)
+			if (length != 0)
+				n++;
+		out.write((higherPercentInLeft ? HIGHER_PERCENT_IN_LEFT : 0) | (isOneOnRight ? ONE_ON_RIGHT : 0));
+		writeVarint(out, n);
+		int previous = -1;
+		for (int symbol = 0; symbol < lengths.length; symbol++) {
+			if (lengths[symbol] != 0) {
+				writeVarint(out, symbol - previous - 1);
+				out.write(lengths[symbol]);
+				previous = symbol;
+			}
+		}
+	}
+
+	static CanonicalCode read(InputStream in) throws IOException {
+		int flags = readByte(in);
+		int n = readVarint(in);
+		// no alphabet has more symbols than chars; checked before the arrays are sized from n
+		if (n > Character.MAX_VALUE + 1)
+			throw new IOException("Invalid code length header: " + n + " symbols");
+		int[] symbols = new int[n];
+		byte[] symbolLengths = new byte[n];
+		int symbol = -1;
+		for (int i = 0; i < n; i++) {
+			int gap = readVarint(in);
+			if (gap > Character.MAX_VALUE)
+				throw new IOException("Invalid code length header");
+			symbol += gap + 1;
+			int length = readByte(in);
+			if (symbol > Character.MAX_VALUE || length == 0 || length > CodeTable.MAX_LENGTH)
+				throw new IOException("Invalid code length header");
+			symbols[i] = symbol;
+			symbolLengths[i] = (byte) length;
+		}
+		byte[] lengths = new byte[symbol + 1];
+		for (int i = 0; i < n; i++)
+			lengths[symbols[i]] = symbolLengths[i];
+		return new CanonicalCode(lengths, (flags & HIGHER_PERCENT_IN_LEFT) != 0, (flags & ONE_ON_RIGHT) != 0);
+	}
+
+	byte[] toByteArray() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			write(out);
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+		return out.toByteArray();
+	}
+
+	static CanonicalCode of(byte[] header) {
+		try {
+			return read(new ByteArrayInputStream(header));
+		} catch (IOException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+
+	static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static int readVarint(InputStream in) throws IOException {
+		long value = readVarLong(in);
+		if (value > Integer.MAX_VALUE)
+			throw new IOException("Varint out of range");
+		return (int) value;
+	}
+
+	static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte(in);
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0)
+			throw new EOFException("Unexpected end of code length header");
+		return b;
+	}
+}
@@ -0,0 +1,149 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads any range of bytes of a file compressed by {@link HuffmanCompressor}
+ * with a checkpoint interval, decoding only from the checkpoint before the
+ * range to the one after it. Reads go through positional channel reads, so
+ * one reader can serve several threads.
+ */
+public final class CheckpointReader implements Closeable {
+	/* a header of 256 symbols takes well under this */
+	private static final int HEADER_SIZE = 4096;
+
+	private final FileChannel channel;
+	private final long length;
+	/* file offsets of the first byte of the codes and of the byte after them */
+	private final long codes;
+	private final long end;
+	private final int interval;
+	private final long[] checkpoints;
+	private final TableDecoder decoder;
+
+	private CheckpointReader(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long size = channel.size();
+		if (size < HuffmanCompressor.CHECKPOINT_FOOTER_SIZE)
+			throw new IOException("Not a Huffman compressed file");
+		ByteBuffer footer = read(size - HuffmanCompressor.CHECKPOINT_FOOTER_SIZE,
+				HuffmanCompressor.CHECKPOINT_FOOTER_SIZE);
+		end = footer.getLong();
+		if (footer.getInt() != HuffmanCompressor.CHECKPOINT_MAGIC || end < 0 || end > size - 20)
+			throw new IOException("File has no checkpoint index");
+
+		ByteBuffer header = read(0, (int) Math.min(end, HEADER_SIZE));
+		ByteArrayInputStream in = new ByteArrayInputStream(header.array());
+		if (HuffmanCompressor.readInt(in) != HuffmanCompressor.MAGIC)
+			throw new IOException("Not a Huffman compressed file");
+		length = CanonicalCode.readVarLong(in);
+		CanonicalCode code = CanonicalCode.read(in);
+		if (code.lengths.length > 256)
+			throw new IOException("Code length header is not for bytes");
+		codes = header.capacity() - in.available();
+		decoder = new TableDecoder(code.table());
+
+		ByteBuffer index = read(end, (int) Math.min(size - end, Integer.MAX_VALUE));
+		interval = index.getInt();
+		int count = index.getInt();
+		if (interval <= 0 || count != (length + interval - 1) / interval
+				|| index.remaining() != 8L * count + HuffmanCompressor.CHECKPOINT_FOOTER_SIZE)
+			throw new IOException("Invalid checkpoint index");
+		checkpoints = new long[count];
+		for (int k = 0; k < count; k++) {
+			checkpoints[k] = index.getLong();
+			if (checkpoints[k] < (k == 0 ? 0 : checkpoints[k - 1]) || checkpoints[k] > (end - codes) * 8)
+				throw new IOException("Invalid checkpoint " + k);
+		}
+	}
+
+	/**
+	 * Opens a file written with a checkpoint interval.
+	 *
+	 * @throws IOException if the file is not such a file
+	 */
+	public static CheckpointReader open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new CheckpointReader(channel);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes before compression.
+	 */
+	public long length() {
+		return length;
+	}
+
+	public int getCheckpointInterval() {
+		return interval;
+	}
+
+	/**
+	 * Reads up to {@code len} bytes starting at {@code position} of the
+	 * uncompressed data. Returns the number of bytes read, which is less
+	 * than {@code len} only at the end of the data, or -1 when
+	 * {@code position} is at or past the end.
+	 */
+	public int read(long position, byte[] b, int off, int len) throws IOException {
+		if (position < 0 || off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (position >= length)
+			return -1;
+		len = (int) Math.min(len, length - position);
+		if (len == 0)
+			return 0;
+		int first = (int) (position / interval);
+		int last = (int) ((position + len - 1) / interval);
+		long from = codes + (checkpoints[first] >>> 3);
+		long to = last + 1 < checkpoints.length ? codes + ((checkpoints[last + 1] + 7) >>> 3) : end;
+		if (to - from > Integer.MAX_VALUE)
+			throw new IOException("Range of " + len + " bytes is too large to decode at once");
+		byte[] data = read(from, (int) (to - from)).array();
+		BitReader bits = new BitReader(data, 8L * data.length);
+		bits.skip((int) (checkpoints[first] & 7));
+
+		int[] symbols = new int[Math.min(HuffmanCompressor.BUFFER_SIZE, Math.max(len, interval))];
+		for (long skip = position - (long) first * interval; skip > 0;) {
+			int n = decoder.decode(bits, symbols, 0, (int) Math.min(skip, symbols.length));
+			if (n == 0)
+				throw new EOFException("Compressed data ends early");
+			skip -= n;
+		}
+		for (int done = 0; done < len;) {
+			int n = decoder.decode(bits, symbols, 0, Math.min(len - done, symbols.length));
+			if (n == 0)
+				throw new EOFException("Compressed data ends early");
+			for (int i = 0; i < n; i++)
+				b[off + done + i] = (byte) symbols[i];
+			done += n;
+		}
+		return len;
+	}
+
+	private ByteBuffer read(long position, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("File ends early");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,51 @@
+package huffman;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Checksum algorithms of the block format, by the id stored in the file.
+ * CRC32C is computed by the CPU on current JVMs but only exists from Java 9,
+ * so it is looked up at run time and CRC32 is used where it is missing.
+ */
+final class Checksums {
+	static final int NONE = 0;
+	static final int CRC32 = 1;
+	static final int CRC32C = 2;
+
+	private static final Constructor<? extends Checksum> CRC32C_CONSTRUCTOR = crc32c();
+	static final int PREFERRED = CRC32C_CONSTRUCTOR != null ? CRC32C : CRC32;
+
+	private Checksums() {
+	}
+
+	private static Constructor<? extends Checksum> crc32c() {
+		try {
+			return Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class).getConstructor();
+		} catch (ReflectiveOperationException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a new checksum of the algorithm {@code id}.
+	 *
+	 * @throws IOException if the algorithm is unknown or missing from this
+	 *             JVM
+	 */
+	static Checksum create(int id) throws IOException {
+		if (id == CRC32)
+			return new CRC32();
+		if (id != CRC32C)
+			throw new IOException("Unknown checksum algorithm " + id);
+		if (CRC32C_CONSTRUCTOR == null)
+			throw new IOException("CRC32C checksums need Java 9 or later");
+		try {
+			return CRC32C_CONSTRUCTOR.newInstance();
+		} catch (ReflectiveOperationException ex) {
+			throw new IOException("Cannot create a CRC32C checksum", ex);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Code of every symbol as an int plus a bit length, in arrays indexed by the
+ * symbol. A length of 0 means the symbol has no code.
+ */
+final class CodeTable {
+	static final int MAX_LENGTH = 32;
+
+	final int[] codes;
+	final byte[] lengths;
+	final int maxLength;
+
+	CodeTable(int[] codes, byte[] lengths) {
+		this.codes = codes;
+		this.lengths = lengths;
+		int max = 0;
+		for (byte length : lengths)
+			max = Math.max(max, length);
+		this.maxLength = max;
+	}
+
+	/**
+	 * Returns the "symbol -> code" view of the table.
+	 */
+	HashMap<String, String> toResult() {
+		HashMap<String, String> result = new HashMap<>();
+		for (int symbol = 0; symbol < lengths.length; symbol++) {
+			if (lengths[symbol] != 0)
+				result.put((char) symbol + "", toBits(codes[symbol], lengths[symbol]));
+		}
+		return result;
+	}
+
+	static String toBits(int code, int length) {
+		char[] bits = new char[length];
+		for (int i = 0; i < length; i++)
+			bits[i] = (code >>> (length - 1 - i) & 1) == 0 ? '0' : '1';
+		return new String(bits);
+	}
+
+	public void encode(CharSequence s, BitWriter out) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			out.write(codes[c], lengths[c]);
+		}
+	}
+
+	public void encode(byte[] data, int off, int len, BitWriter out) {
+		Kernels.CURRENT.encode(this, data, off, len, out);
+	}
+
+	public void encode(int[] symbols, int off, int len, BitWriter out) {
+		for (int i = off; i < off + len; i++) {
+			int symbol = symbols[i];
+			out.write(codes[symbol], lengths[symbol]);
+		}
+	}
+
+	/**
+	 * Encodes the bytes at {@code [off, off + len)} of {@code data} without
+	 * copying them out of the buffer.
+	 */
+	public void encode(ByteBuffer data, int off, int len, BitWriter out) {
+		Kernels.CURRENT.encode(this, data, off, len, out);
+	}
+
+	public long bitLength(long[] counts) {
+		long n = 0;
+		for (int symbol = 0; symbol < counts.length && symbol < lengths.length; symbol++)
+			n += counts[symbol] * lengths[symbol];
+		return n;
+	}
+
+	public long bitLength(CharSequence s) {
+		long n = 0;
+		for (int i = 0; i < s.length(); i++)
+			n += lengths[s.charAt(i)];
+		return n;
+	}
+}
@@ -0,0 +1,110 @@
+package huffman;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of {@link HuffmanCodec}s keyed by the fingerprint of their
+ * header. Lookups take no lock: a hit only marks its entry as used. Inserts
+ * take a lock and evict with the clock policy, an approximation of least
+ * recently used: the oldest entries are visited in turn, and one that was
+ * used since the last visit is unmarked and kept while one that was not is
+ * evicted. A codec evicted while in use stays valid for whoever holds it.
+ */
+public final class CodecCache {
+	private final int capacity;
+	private final ConcurrentHashMap<Long, Entry> entries;
+	/* keys in the order the clock visits them; guarded by lock */
+	private final Deque<Long> clock = new ArrayDeque<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	private static final class Entry {
+		final HuffmanCodec codec;
+		volatile boolean used;
+
+		Entry(HuffmanCodec codec) {
+			this.codec = codec;
+		}
+	}
+
+	public CodecCache(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.capacity = capacity;
+		this.entries = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+	}
+
+	/**
+	 * Returns the codec of {@code header}, building it on a miss.
+	 *
+	 * @throws IllegalArgumentException if the header is not a canonical code
+	 */
+	public HuffmanCodec get(byte[] header) {
+		Long key = HuffmanCodec.fingerprint(header);
+		Entry entry = entries.get(key);
+		if (entry != null && entry.codec.hasHeader(header)) {
+			// a read before the write keeps hot entries from bouncing their cache line
+			if (!entry.used)
+				entry.used = true;
+			hits.increment();
+			return entry.codec;
+		}
+		misses.increment();
+		HuffmanCodec codec = HuffmanCodec.of(header);
+		if (entry == null)
+			insert(key, codec);
+		return codec;
+	}
+
+	/**
+	 * Adds a codec unless another thread's miss got there first, or a
+	 * fingerprint collision holds the key, and evicts down to the capacity.
+	 */
+	private void insert(Long key, HuffmanCodec codec) {
+		lock.lock();
+		try {
+			if (entries.putIfAbsent(key, new Entry(codec)) != null)
+				return;
+			clock.add(key);
+			while (entries.size() > capacity) {
+				Long oldest = clock.poll();
+				Entry candidate = entries.get(oldest);
+				if (candidate.used) {
+					candidate.used = false;
+					clock.add(oldest);
+				} else {
+					entries.remove(oldest);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public void clear() {
+		lock.lock();
+		try {
+			entries.clear();
+			clock.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
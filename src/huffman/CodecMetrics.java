@@ -0,0 +1,244 @@
+package huffman;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the compressors: time spent in every stage, original and
+ * compressed bytes, and how close the codes come to the entropy of the
+ * counts they were built from. Counters are striped adders, so any number of
+ * threads can record without contention. {@link #disabled()}, the default of
+ * every compressor, records nothing and does not read the clock.
+ */
+public final class CodecMetrics implements CodecMetricsMBean {
+
+	public enum Stage {
+		COUNT, BUILD, ASSIGN, ENCODE, DECODE
+	}
+
+	private static final CodecMetrics DISABLED = new CodecMetrics(false);
+
+	private static final double LOG2 = Math.log(2);
+
+	private final boolean enabled;
+	private final LongAdder[] nanos = new LongAdder[Stage.values().length];
+	private final LongAdder originalBytes = new LongAdder();
+	private final LongAdder compressedBytes = new LongAdder();
+	private final LongAdder symbols = new LongAdder();
+	private final LongAdder codeBits = new LongAdder();
+	private final DoubleAdder entropyBits = new DoubleAdder();
+	private final AtomicInteger maxCodeLength = new AtomicInteger();
+	private volatile int tableSize;
+
+	public CodecMetrics() {
+		this(true);
+	}
+
+	private CodecMetrics(boolean enabled) {
+		this.enabled = enabled;
+		for (int i = 0; i < nanos.length; i++)
+			nanos[i] = new LongAdder();
+	}
+
+	/**
+	 * Returns the shared metrics that record nothing. They cannot be
+	 * registered, and resetting them does nothing.
+	 */
+	public static CodecMetrics disabled() {
+		return DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns the start time of a stage to pass to
+	 * {@link #stop(Stage, long)}.
+	 */
+	long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	void stop(Stage stage, long start) {
+		if (enabled)
+			nanos[stage.ordinal()].add(System.nanoTime() - start);
+	}
+
+	/**
+	 * Records {@code original} bytes coded as {@code compressed} bytes, in
+	 * that order whether they were encoded or decoded.
+	 */
+	void bytes(long original, long compressed) {
+		if (enabled) {
+			originalBytes.add(original);
+			compressedBytes.add(compressed);
+		}
+	}
+
+	/**
+	 * Records a code built for {@code counts}.
+	 */
+	void code(long[] counts, byte[] lengths) {
+		if (!enabled)
+			return;
+		long total = 0, bits = 0;
+		int size = 0, max = 0;
+		double sum = 0;
+		for (int symbol = 0; symbol < counts.length; symbol++) {
+			long count = counts[symbol];
+			if (count == 0)
+				continue;
+			total += count;
+			bits += count * lengths[symbol];
+			sum += count * Math.log(count);
+			size++;
+			max = Math.max(max, lengths[symbol]);
+		}
+		symbols.add(total);
+		codeBits.add(bits);
+		// n * H = n log n - sum of c log c
+		if (total > 0)
+			entropyBits.add((total * Math.log(total) - sum) / LOG2);
+		tableSize = size;
+		maxCodeLength.accumulateAndGet(max, Math::max);
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server as
+	 * "huffman:type=CodecMetrics,name=<name>".
+	 */
+	public ObjectName register(String name) throws JMException {
+		if (!enabled)
+			throw new IllegalStateException("Disabled metrics cannot be registered");
+		ObjectName objectName = new ObjectName("huffman:type=CodecMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	public long getNanos(Stage stage) {
+		return nanos[stage.ordinal()].sum();
+	}
+
+	@Override
+	public long getCountNanos() {
+		return getNanos(Stage.COUNT);
+	}
+
+	@Override
+	public long getBuildNanos() {
+		return getNanos(Stage.BUILD);
+	}
+
+	@Override
+	public long getAssignNanos() {
+		return getNanos(Stage.ASSIGN);
+	}
+
+	@Override
+	public long getEncodeNanos() {
+		return getNanos(Stage.ENCODE);
+	}
+
+	@Override
+	public long getDecodeNanos() {
+		return getNanos(Stage.DECODE);
+	}
+
+	/**
+	 * Returns the uncompressed size of everything encoded and decoded.
+	 */
+	@Override
+	public long getOriginalBytes() {
+		return originalBytes.sum();
+	}
+
+	/**
+	 * Returns the compressed size of everything encoded and decoded,
+	 * headers included.
+	 */
+	@Override
+	public long getCompressedBytes() {
+		return compressedBytes.sum();
+	}
+
+	/**
+	 * Returns the number of symbols the recorded codes were built for.
+	 */
+	@Override
+	public long getSymbols() {
+		return symbols.sum();
+	}
+
+	@Override
+	public double getBitsPerSymbol() {
+		long n = symbols.sum();
+		return n == 0 ? 0 : codeBits.sum() * 1.0 / n;
+	}
+
+	/**
+	 * Returns the Shannon entropy of the recorded counts, the least
+	 * {@link #getBitsPerSymbol()} any code of single symbols can reach.
+	 */
+	@Override
+	public double getEntropyBitsPerSymbol() {
+		long n = symbols.sum();
+		return n == 0 ? 0 : entropyBits.sum() / n;
+	}
+
+	/**
+	 * Returns compressed bytes over original bytes, 1 before any are
+	 * recorded.
+	 */
+	@Override
+	public double getRatio() {
+		long original = originalBytes.sum();
+		return original == 0 ? 1 : compressedBytes.sum() * 1.0 / original;
+	}
+
+	@Override
+	public int getMaxCodeLength() {
+		return maxCodeLength.get();
+	}
+
+	/**
+	 * Returns the number of symbols in the most recent code.
+	 */
+	@Override
+	public int getTableSize() {
+		return tableSize;
+	}
+
+	@Override
+	public void reset() {
+		if (!enabled)
+			return;
+		for (LongAdder adder : nanos)
+			adder.reset();
+		originalBytes.reset();
+		compressedBytes.reset();
+		symbols.reset();
+		codeBits.reset();
+		entropyBits.reset();
+		maxCodeLength.set(0);
+		tableSize = 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Stage stage : Stage.values())
+			sb.append(stage.name().toLowerCase(Locale.ROOT)).append(' ').append(getNanos(stage) / 1000000).append(" ms, ");
+		return sb.append(getOriginalBytes()).append(" bytes original, ").append(getCompressedBytes())
+				.append(" bytes compressed, ")
+				.append(String.format("%.3f bits/symbol (entropy %.3f), ", getBitsPerSymbol(), getEntropyBitsPerSymbol()))
+				.append("max code length ").append(getMaxCodeLength()).append(", table size ").append(getTableSize())
+				.toString();
+	}
+}
@@ -0,0 +1,36 @@
+package huffman;
+
+/**
+ * JMX view of {@link CodecMetrics}. Times are in nanoseconds summed over all
+ * threads.
+ */
+public interface CodecMetricsMBean {
+
+	long getCountNanos();
+
+	long getBuildNanos();
+
+	long getAssignNanos();
+
+	long getEncodeNanos();
+
+	long getDecodeNanos();
+
+	long getOriginalBytes();
+
+	long getCompressedBytes();
+
+	long getSymbols();
+
+	double getBitsPerSymbol();
+
+	double getEntropyBitsPerSymbol();
+
+	double getRatio();
+
+	int getMaxCodeLength();
+
+	int getTableSize();
+
+	void reset();
+}
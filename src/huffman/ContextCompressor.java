@@ -0,0 +1,250 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Compresses arrays in memory with order-1 codes: every byte is coded with a
+ * code chosen by the byte before it. Only the contexts whose own code saves
+ * more than its header costs get one, at most {@code maxContexts} of them
+ * (the ones that save the most), so that their tables stay in cache: the
+ * decoder looks up codes of up to 10 bits in one table of 4 KB per
+ * context. Bytes after any other context use a shared order-0 code built from
+ * those bytes alone.
+ *
+ * Format: the magic "HUFO", the number of bytes as a varint, the
+ * {@link CanonicalCode} header of the order-0 code, the number of contexts
+ * with a code of their own as a varint, each of them as the context byte and
+ * its header, then the packed codes. The first byte is coded in context 0.
+ */
+public final class ContextCompressor {
+	static final int MAGIC = 0x4855464F;
+	public static final int DEFAULT_MAX_CONTEXTS = 64;
+	static final int MAX_CODE_LENGTH = 16;
+	/*
+	 * Lookup entries hold a symbol, its length and, when the code of the
+	 * next symbol also fits in the pattern, that symbol and its length; 0
+	 * marks a code longer than the pattern.
+	 */
+	private static final int LENGTH_SHIFT = 8;
+	private static final int SECOND_SHIFT = 12;
+	private static final int SECOND_LENGTH_SHIFT = 20;
+
+	private final HuffmanCompressor compressor = new HuffmanCompressor(true, true, MAX_CODE_LENGTH);
+	private final int maxContexts;
+
+	public ContextCompressor() {
+		this(DEFAULT_MAX_CONTEXTS);
+	}
+
+	/**
+	 * Gives at most {@code maxContexts} contexts, 0 to 256, a code of their
+	 * own.
+	 */
+	public ContextCompressor(int maxContexts) {
+		if (maxContexts < 0 || maxContexts > 256)
+			throw new IllegalArgumentException("Number of contexts must be between 0 and 256");
+		this.maxContexts = maxContexts;
+	}
+
+	public byte[] compress(byte[] data) {
+		int[] pairs = new int[256 * 256];
+		int previous = 0;
+		for (byte b : data) {
+			pairs[previous << 8 | (b & 0xFF)]++;
+			previous = b & 0xFF;
+		}
+		long[] counts = new long[256];
+		for (int i = 0; i < pairs.length; i++)
+			counts[i & 0xFF] += pairs[i];
+		byte[] order0 = compressor.code(counts).lengths;
+
+		// bits each context saves with a code of its own, header included
+		CanonicalCode[] codes = new CanonicalCode[256];
+		long[] savings = new long[256];
+		Integer[] contexts = new Integer[256];
+		int candidates = 0;
+		for (int context = 0; context < 256 && maxContexts > 0; context++) {
+			long[] contextCounts = new long[256];
+			long sharedCost = 0;
+			for (int b = 0; b < 256; b++) {
+				contextCounts[b] = pairs[context << 8 | b];
+				sharedCost += contextCounts[b] * order0[b];
+			}
+			if (sharedCost == 0)
+				continue;
+			CanonicalCode code = compressor.code(contextCounts);
+			long ownCost = 8L * (1 + code.toByteArray().length);
+			for (int b = 0; b < 256; b++)
+				ownCost += contextCounts[b] * code.lengths[b];
+			if (ownCost < sharedCost) {
+				codes[context] = code;
+				savings[context] = sharedCost - ownCost;
+				contexts[candidates++] = context;
+			}
+		}
+		Arrays.sort(contexts, 0, candidates, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(savings[b], savings[a]);
+			}
+		});
+		int kept = Math.min(candidates, maxContexts);
+		boolean[] own = new boolean[256];
+		for (int i = 0; i < kept; i++)
+			own[contexts[i]] = true;
+
+		long[] fallback = new long[256];
+		for (int context = 0; context < 256; context++)
+			if (!own[context])
+				for (int b = 0; b < 256; b++)
+					fallback[b] += pairs[context << 8 | b];
+		CanonicalCode shared = compressor.code(fallback);
+		CodeTable sharedTable = shared.table();
+		CodeTable[] tables = new CodeTable[256];
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		try {
+			HuffmanCompressor.writeInt(header, MAGIC);
+			CanonicalCode.writeVarint(header, data.length);
+			shared.write(header);
+			CanonicalCode.writeVarint(header, kept);
+			for (int context = 0; context < 256; context++) {
+				if (own[context]) {
+					header.write(context);
+					codes[context].write(header);
+					tables[context] = codes[context].table();
+				} else {
+					tables[context] = sharedTable;
+				}
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+
+		BitWriter bits = new BitWriter(header.size() + data.length);
+		for (byte b : header.toByteArray())
+			bits.write(b & 0xFF, 8);
+		previous = 0;
+		for (byte v : data) {
+			int b = v & 0xFF;
+			CodeTable table = tables[previous];
+			bits.write(table.codes[b], table.lengths[b]);
+			previous = b;
+		}
+		return bits.toByteArray();
+	}
+
+	/**
+	 * Decompresses the output of {@link #compress(byte[])}.
+	 *
+	 * @throws IllegalArgumentException if the input is not such output or is
+	 *             damaged
+	 */
+	public static byte[] decompress(byte[] compressed) {
+		try {
+			ByteArrayInputStream in = new ByteArrayInputStream(compressed);
+			if (HuffmanCompressor.readInt(in) != MAGIC)
+				throw new IOException("Not a context compressed array");
+			int length = CanonicalCode.readVarint(in);
+			// every byte takes at least a bit, so a longer length is damage and must not size the output
+			if (length > 8L * in.available())
+				throw new IOException("Invalid length " + length);
+			CodeTable[] tables = new CodeTable[257];
+			tables[256] = table(CanonicalCode.read(in));
+			int kept = CanonicalCode.readVarint(in);
+			if (kept > 256)
+				throw new IOException("Too many contexts");
+			// slot of every context in the lookup table, the shared code last
+			int[] slots = new int[256];
+			Arrays.fill(slots, kept);
+			for (int i = 0; i < kept; i++) {
+				int context = CanonicalCode.readByte(in);
+				slots[context] = i;
+				tables[i] = table(CanonicalCode.read(in));
+			}
+			tables[kept] = tables[256];
+			int[] lookup = new int[(kept + 1) << TableDecoder.LOOKUP_BITS];
+			TableDecoder[] decoders = new TableDecoder[kept + 1];
+			for (int slot = 0; slot <= kept; slot++)
+				fill(lookup, slot << TableDecoder.LOOKUP_BITS, tables[slot]);
+			pair(lookup, slots);
+
+			int offset = compressed.length - in.available();
+			BitReader bits = new BitReader(compressed, offset, (compressed.length - offset) * 8L);
+			byte[] data = new byte[length];
+			int previous = 0;
+			for (int i = 0; i < length; i++) {
+				int slot = slots[previous];
+				int entry = lookup[slot << TableDecoder.LOOKUP_BITS | bits.peek(TableDecoder.LOOKUP_BITS)];
+				int symbol;
+				if (entry >>> SECOND_LENGTH_SHIFT != 0 && i + 1 < length) {
+					data[i++] = (byte) entry;
+					symbol = entry >>> SECOND_SHIFT & 0xFF;
+					bits.skip((entry >>> LENGTH_SHIFT & 0xF) + (entry >>> SECOND_LENGTH_SHIFT));
+				} else if (entry != 0) {
+					symbol = entry & 0xFF;
+					bits.skip(entry >>> LENGTH_SHIFT & 0xF);
+				} else {
+					if (decoders[slot] == null)
+						decoders[slot] = new TableDecoder(tables[slot]);
+					symbol = decoders[slot].decodeSymbol(bits);
+				}
+				if (symbol < 0 || bits.remaining() < 0)
+					throw new EOFException("Input ends " + (length - i) + " bytes early");
+				data[i] = (byte) symbol;
+				previous = symbol;
+			}
+			return data;
+		} catch (IOException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Stores the symbol and length of every code of {@code table} that fits
+	 * in the lookup width at {@code lookup[base]} onwards, under every bit
+	 * pattern that starts with it. Longer codes leave 0 for the decoder.
+	 */
+	private static void fill(int[] lookup, int base, CodeTable table) {
+		int width = TableDecoder.LOOKUP_BITS;
+		for (int symbol = 0; symbol < table.lengths.length; symbol++) {
+			int length = table.lengths[symbol];
+			if (length == 0 || length > width)
+				continue;
+			int first = table.codes[symbol] << (width - length);
+			Arrays.fill(lookup, base + first, base + first + (1 << (width - length)), symbol | length << LENGTH_SHIFT);
+		}
+	}
+
+	/**
+	 * Adds to every entry the symbol that follows in the rest of the pattern,
+	 * looked up in the context of the first symbol, when its whole code is
+	 * inside the pattern.
+	 */
+	private static void pair(int[] lookup, int[] slots) {
+		int width = TableDecoder.LOOKUP_BITS, mask = (1 << width) - 1;
+		int[] single = lookup.clone();
+		for (int i = 0; i < lookup.length; i++) {
+			int entry = single[i];
+			if (entry == 0)
+				continue;
+			int length = entry >>> LENGTH_SHIFT;
+			int pattern = i & mask;
+			int next = single[slots[entry & 0xFF] << width | (pattern << length & mask)];
+			int nextLength = next >>> LENGTH_SHIFT;
+			if (next != 0 && nextLength <= width - length)
+				lookup[i] = entry | (next & 0xFF) << SECOND_SHIFT | nextLength << SECOND_LENGTH_SHIFT;
+		}
+	}
+
+	private static CodeTable table(CanonicalCode code) throws IOException {
+		if (code.lengths.length > 256)
+			throw new IOException("Code length header is not for bytes");
+		return code.table();
+	}
+}
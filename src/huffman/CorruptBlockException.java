@@ -0,0 +1,34 @@
+package huffman;
+
+import java.io.IOException;
+
+/**
+ * Signals a block of a {@link BlockCompressor} stream that cannot be decoded
+ * or whose checksum does not match its decoded bytes.
+ */
+public class CorruptBlockException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final int block;
+	private final long offset;
+
+	public CorruptBlockException(String message, int block, long offset, Throwable cause) {
+		super("Block " + block + " at offset " + offset + ": " + message, cause);
+		this.block = block;
+		this.offset = offset;
+	}
+
+	/**
+	 * Returns the number of the block, counting from 0.
+	 */
+	public int getBlock() {
+		return block;
+	}
+
+	/**
+	 * Returns the offset of the block in the compressed stream.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+}
@@ -0,0 +1,81 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the {@link HuffmanDictionary}s of one directory, where
+ * dictionary {@code id} is the file {@code id.hufd}. The owner decides the
+ * capacity and how long the cache lives; once it is full the dictionary used
+ * longest ago is dropped and loaded again when it is next asked for.
+ * Dictionaries are loaded outside the lock, so a slow file read does not
+ * hold up hits on other ids.
+ */
+public final class DictionaryCache {
+	private final Path directory;
+	private final Map<String, HuffmanDictionary> dictionaries;
+
+	public DictionaryCache(Path directory, int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.directory = directory;
+		this.dictionaries = new LinkedHashMap<String, HuffmanDictionary>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, HuffmanDictionary> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the dictionary {@code id}, loading it the first time it is
+	 * asked for.
+	 *
+	 * @throws IllegalArgumentException if {@code id} is not a plain file name
+	 * @throws IOException if the file cannot be read or holds another id
+	 */
+	public HuffmanDictionary get(String id) throws IOException {
+		HuffmanDictionary.checkId(id);
+		synchronized (dictionaries) {
+			HuffmanDictionary dictionary = dictionaries.get(id);
+			if (dictionary != null)
+				return dictionary;
+		}
+		Path file = directory.resolve(id + HuffmanDictionary.SUFFIX);
+		HuffmanDictionary loaded = HuffmanDictionary.load(file);
+		if (!loaded.getId().equals(id))
+			throw new IOException(file + " holds dictionary '" + loaded.getId() + "', not '" + id + "'");
+		synchronized (dictionaries) {
+			// another thread may have loaded it meanwhile; keep the first
+			HuffmanDictionary dictionary = dictionaries.putIfAbsent(id, loaded);
+			return dictionary != null ? dictionary : loaded;
+		}
+	}
+
+	/**
+	 * Makes a dictionary that was trained in this process available to
+	 * {@link #get(String)}, in place of any with the same id. It can be
+	 * evicted like the others, so it should also be saved in the directory.
+	 */
+	public void register(HuffmanDictionary dictionary) {
+		synchronized (dictionaries) {
+			dictionaries.put(dictionary.getId(), dictionary);
+		}
+	}
+
+	public int size() {
+		synchronized (dictionaries) {
+			return dictionaries.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (dictionaries) {
+			dictionaries.clear();
+		}
+	}
+}
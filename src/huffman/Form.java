@@ -8,11 +8,18 @@ package huffman;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.JMException;
 import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 /**
  *
@@ -20,6 +27,18 @@ import javax.swing.JOptionPane;
  */
 public class Form extends javax.swing.JFrame {
 
+    /* longest bit string or text shown in full; longer results are summarized */
+    private static final int DISPLAY_LIMIT = 1 << 16;
+    /* chars encoded or decoded between checks for cancellation */
+    private static final int CHUNK = 1 << 16;
+    private static final int CANCEL_CHECK_MILLIS = 100;
+
+    private ProgressMonitor monitor;
+    /* checks the Cancel button of the monitor while a job runs */
+    private Timer cancelCheck;
+    /* stages of the jobs, registered with JMX by main() */
+    private final CodecMetrics metrics = new CodecMetrics();
+
     /**
      * Creates new form Form
      */
@@ -57,6 +76,7 @@ public class Form extends javax.swing.JFrame {
         rbPercentRight = new javax.swing.JRadioButton();
         rbOrder01 = new javax.swing.JRadioButton();
         rbOrder10 = new javax.swing.JRadioButton();
+        chkCanonical = new javax.swing.JCheckBox();
         jPanel3 = new javax.swing.JPanel();
         jScrollPane2 = new javax.swing.JScrollPane();
         txtDecodingCode = new javax.swing.JTextArea();
@@ -117,6 +137,9 @@ public class Form extends javax.swing.JFrame {
         rbOrder10.setFont(new java.awt.Font("Tahoma", 0, 14)); // NOI18N
         rbOrder10.setText("1 - 0");
 
+        chkCanonical.setFont(new java.awt.Font("Tahoma", 0, 14)); // NOI18N
+        chkCanonical.setText("Canonical Code");
+
         javax.swing.GroupLayout jPanel2Layout = new javax.swing.GroupLayout(jPanel2);
         jPanel2.setLayout(jPanel2Layout);
         jPanel2Layout.setHorizontalGroup(
@@ -125,7 +148,8 @@ public class Form extends javax.swing.JFrame {
                 .addGap(25, 25, 25)
                 .addGroup(jPanel2Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(jLabel3)
-                    .addComponent(jLabel4))
+                    .addComponent(jLabel4)
+                    .addComponent(chkCanonical))
                 .addGap(18, 18, 18)
                 .addGroup(jPanel2Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(rbPercentLeft)
@@ -149,6 +173,8 @@ public class Form extends javax.swing.JFrame {
                     .addGroup(jPanel2Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                         .addComponent(rbOrder01)
                         .addComponent(rbOrder10)))
+                .addGap(18, 18, 18)
+                .addComponent(chkCanonical)
                 .addGap(0, 0, Short.MAX_VALUE))
         );
 
@@ -289,9 +315,8 @@ public class Form extends javax.swing.JFrame {
         // TODO add your handling code here:
         String draw = txtDraw.getText().trim();
         if (draw.length() > 0) {
-            Huffman huffman = new Huffman(draw, rbPercentLeft.isSelected(), rbOrder01.isSelected());
-            txtCode.setText(huffman.getResult());
-            txtOutput.setText(huffman.getDecoding());
+            start(new EncodeJob(draw, rbPercentLeft.isSelected(), rbOrder01.isSelected(),
+                    chkCanonical.isSelected()), "Encoding " + draw.length() + " characters");
         } else {
             JOptionPane.showMessageDialog(this, "Draw cannot be blank", "Invalid",
                     JOptionPane.WARNING_MESSAGE);
@@ -303,28 +328,209 @@ public class Form extends javax.swing.JFrame {
         String compressed = txtCompressed.getText().trim();
         String decodingCode = txtDecodingCode.getText().trim();
         if (compressed.length() > 0 && decodingCode.length() > 0) {
-            Huffman huffman = new Huffman();
-            String s = "";
-            BufferedReader br = new BufferedReader(new StringReader(decodingCode));
-            StringTokenizer stk;
-            huffman.result = new HashMap<>();
-            try {
-                while ((s = br.readLine()) != null) {
-                    stk = new StringTokenizer(s, ":");
-                    String key = stk.nextToken().trim();
-                    String value = stk.nextToken().trim();
-                    huffman.result.put(key, value);
-                }
-            } catch (IOException ex) {
-                Logger.getLogger(Form.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            txtDrawOutput.setText(huffman.getEncoding(compressed));
+            start(new DecodeJob(compressed, decodingCode), "Decoding " + compressed.length() + " bits");
         } else {
             JOptionPane.showMessageDialog(this, "Compressed and Decoding Code cannot be blank", "Invalid",
                     JOptionPane.WARNING_MESSAGE);
         }
     }//GEN-LAST:event_btnDecodeActionPerformed
 
+    /**
+     * Runs {@code job} off the event dispatch thread behind a progress
+     * dialog whose Cancel button stops it. The button is checked on a timer
+     * rather than on progress, which stages such as building the tree do
+     * not report. The buttons stay disabled until the job is done.
+     */
+    private void start(final Job job, String note) {
+        btnEncode.setEnabled(false);
+        btnDecode.setEnabled(false);
+        monitor = new ProgressMonitor(this, note, null, 0, 100);
+        job.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                monitor.setProgress((Integer) evt.getNewValue());
+            }
+        });
+        cancelCheck = new Timer(CANCEL_CHECK_MILLIS, evt -> {
+            if (monitor.isCanceled()) {
+                job.cancel(false);
+            }
+        });
+        cancelCheck.start();
+        job.execute();
+    }
+
+    /**
+     * Work of one button. {@link #show()} puts the result into the form on
+     * the event dispatch thread unless the job was cancelled.
+     */
+    private abstract class Job extends SwingWorker<Void, Void> {
+
+        protected abstract void show();
+
+        protected void failed(Throwable cause) {
+            JOptionPane.showMessageDialog(Form.this, cause.toString(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+
+        @Override
+        protected void done() {
+            cancelCheck.stop();
+            monitor.close();
+            btnEncode.setEnabled(true);
+            btnDecode.setEnabled(true);
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                get();
+                show();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                failed(ex.getCause());
+            }
+        }
+    }
+
+    private final class EncodeJob extends Job {
+
+        private final String draw;
+        private final boolean percentLeft;
+        private final boolean order01;
+        private final boolean canonical;
+        private String code;
+        private String output;
+
+        EncodeJob(String draw, boolean percentLeft, boolean order01, boolean canonical) {
+            this.draw = draw;
+            this.percentLeft = percentLeft;
+            this.order01 = order01;
+            this.canonical = canonical;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            Huffman huffman = new Huffman(draw, percentLeft, order01, canonical, metrics);
+            code = canonical ? Base64.getEncoder().encodeToString(huffman.getCanonicalHeader())
+                    : huffman.getResult();
+            if (isCancelled()) {
+                return null;
+            }
+            setProgress(10);
+            BitWriter bits = new BitWriter();
+            long encodeStart = metrics.start();
+            for (int i = 0; i < draw.length() && !isCancelled(); i += CHUNK) {
+                huffman.table.encode(draw.subSequence(i, Math.min(i + CHUNK, draw.length())), bits);
+                setProgress(10 + (int) (90L * Math.min(i + CHUNK, draw.length()) / draw.length()));
+            }
+            metrics.stop(CodecMetrics.Stage.ENCODE, encodeStart);
+            if (isCancelled()) {
+                return null;
+            }
+            if (bits.bitLength() <= DISPLAY_LIMIT) {
+                output = bits.toBitString();
+            } else {
+                // the field only shows the start; the rest would cost more to render than to encode
+                BitReader start = new BitReader(bits.toByteArray(), DISPLAY_LIMIT);
+                StringBuilder sb = new StringBuilder(DISPLAY_LIMIT + 64);
+                while (start.remaining() > 0) {
+                    sb.append(start.readBit() == 0 ? '0' : '1');
+                }
+                output = sb.append(" ... ").append(bits.bitLength()).append(" bits in all").toString();
+            }
+            return null;
+        }
+
+        @Override
+        protected void show() {
+            txtCode.setText(code);
+            txtOutput.setText(output);
+            txtOutput.setCaretPosition(0);
+        }
+    }
+
+    private final class DecodeJob extends Job {
+
+        private final String compressed;
+        private final String decodingCode;
+        private String output;
+
+        DecodeJob(String compressed, String decodingCode) {
+            this.compressed = compressed;
+            this.decodingCode = decodingCode;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            TableDecoder decoder;
+            if (decodingCode.indexOf(':') < 0) {
+                // a canonical code is pasted as its Base64 code length header
+                Huffman huffman = Huffman.fromCanonicalHeader(Base64.getDecoder().decode(decodingCode));
+                decoder = new TableDecoder(huffman.result);
+            } else {
+                decoder = parseResult(decodingCode);
+            }
+            if (isCancelled()) {
+                return null;
+            }
+            BitReader bits = BitReader.of(compressed);
+            long total = bits.remaining();
+            StringBuilder sb = new StringBuilder();
+            long start = metrics.start();
+            while (!isCancelled() && decoder.decode(bits, sb, CHUNK) > 0) {
+                setProgress((int) (100 * (total - bits.remaining()) / total));
+            }
+            metrics.stop(CodecMetrics.Stage.DECODE, start);
+            if (isCancelled()) {
+                return null;
+            }
+            if (sb.length() <= DISPLAY_LIMIT) {
+                output = sb.toString();
+            } else {
+                output = sb.substring(0, DISPLAY_LIMIT) + " ... " + sb.length() + " characters in all";
+            }
+            return null;
+        }
+
+        @Override
+        protected void failed(Throwable cause) {
+            if (cause instanceof IllegalArgumentException || cause instanceof NoSuchElementException) {
+                JOptionPane.showMessageDialog(Form.this, "Invalid Code: " + cause.getMessage(), "Invalid",
+                        JOptionPane.WARNING_MESSAGE);
+            } else {
+                super.failed(cause);
+            }
+        }
+
+        @Override
+        protected void show() {
+            txtDrawOutput.setText(output);
+            txtDrawOutput.setCaretPosition(0);
+        }
+    }
+
+    /**
+     * Parses a pasted result table into the decoder for it, which rejects
+     * tables that are not prefix codes.
+     */
+    private TableDecoder parseResult(String decodingCode) {
+        Huffman huffman = new Huffman();
+        String s = "";
+        BufferedReader br = new BufferedReader(new StringReader(decodingCode));
+        StringTokenizer stk;
+        huffman.result = new HashMap<>();
+        try {
+            while ((s = br.readLine()) != null) {
+                stk = new StringTokenizer(s, ":");
+                String key = stk.nextToken().trim();
+                String value = stk.nextToken().trim();
+                huffman.result.put(key, value);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(Form.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return new TableDecoder(huffman.result);
+    }
+
     /**
      * @param args the command line arguments
      */
@@ -355,7 +561,13 @@ public class Form extends javax.swing.JFrame {
         /* Create and display the form */
         java.awt.EventQueue.invokeLater(new Runnable() {
             public void run() {
-                new Form().setVisible(true);
+                Form form = new Form();
+                try {
+                    form.metrics.register("form");
+                } catch (JMException ex) {
+                    Logger.getLogger(Form.class.getName()).log(Level.WARNING, null, ex);
+                }
+                form.setVisible(true);
             }
         });
     }
@@ -363,6 +575,7 @@ public class Form extends javax.swing.JFrame {
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton btnDecode;
     private javax.swing.JButton btnEncode;
+    private javax.swing.JCheckBox chkCanonical;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
@@ -0,0 +1,87 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Counts symbols into primitive tables. Each loop spreads consecutive symbols
+ * over four interleaved tables, so runs of one symbol do not make every
+ * increment wait for the store of the previous one.
+ */
+final class Histogram {
+
+	private Histogram() {
+	}
+
+	/**
+	 * Adds the bytes {@code data[off, off + len)} to {@code counts}, which has
+	 * 256 entries.
+	 */
+	static void count(byte[] data, int off, int len, long[] counts) {
+		int[] c = new int[4 * 256];
+		int i = off, end = off + len;
+		for (; i + 3 < end; i += 4) {
+			c[data[i] & 0xFF]++;
+			c[256 + (data[i + 1] & 0xFF)]++;
+			c[512 + (data[i + 2] & 0xFF)]++;
+			c[768 + (data[i + 3] & 0xFF)]++;
+		}
+		for (; i < end; i++)
+			c[data[i] & 0xFF]++;
+		for (int symbol = 0; symbol < 256; symbol++)
+			counts[symbol] += (long) c[symbol] + c[256 + symbol] + c[512 + symbol] + c[768 + symbol];
+	}
+
+	/**
+	 * Adds the remaining bytes of {@code data} to {@code counts} without
+	 * copying them out of the buffer, which may be a mapped file.
+	 */
+	static void count(ByteBuffer data, long[] counts) {
+		int[] c = new int[4 * 256];
+		int i = data.position(), end = data.limit();
+		for (; i + 3 < end; i += 4) {
+			c[data.get(i) & 0xFF]++;
+			c[256 + (data.get(i + 1) & 0xFF)]++;
+			c[512 + (data.get(i + 2) & 0xFF)]++;
+			c[768 + (data.get(i + 3) & 0xFF)]++;
+		}
+		for (; i < end; i++)
+			c[data.get(i) & 0xFF]++;
+		for (int symbol = 0; symbol < 256; symbol++)
+			counts[symbol] += (long) c[symbol] + c[256 + symbol] + c[512 + symbol] + c[768 + symbol];
+	}
+
+	/**
+	 * Returns the count of every char of {@code s}, with 256 entries while
+	 * all chars are Latin-1 and 65536 entries otherwise.
+	 */
+	static long[] count(CharSequence s) {
+		int[] c = new int[4 * 256];
+		int i = 0, end = s.length();
+		for (; i + 3 < end; i += 4) {
+			char a = s.charAt(i), b = s.charAt(i + 1), d = s.charAt(i + 2), e = s.charAt(i + 3);
+			if ((a | b | d | e) >= 256)
+				break;
+			c[a]++;
+			c[256 + b]++;
+			c[512 + d]++;
+			c[768 + e]++;
+		}
+		for (; i < end; i++) {
+			char a = s.charAt(i);
+			if (a >= 256)
+				break;
+			c[a]++;
+		}
+		long[] counts = new long[i == end ? 256 : 65536];
+		for (int symbol = 0; symbol < 256; symbol++)
+			counts[symbol] = (long) c[symbol] + c[256 + symbol] + c[512 + symbol] + c[768 + symbol];
+		if (i < end) {
+			int[] wide = new int[65536];
+			for (; i < end; i++)
+				wide[s.charAt(i)]++;
+			for (int symbol = 0; symbol < wide.length; symbol++)
+				counts[symbol] += wide[symbol];
+		}
+		return counts;
+	}
+}
@@ -1,267 +1,223 @@
 package huffman;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.atomic.AtomicInteger;
 
-class Node {
-	String info;
-	double percent;
-	Node left;
-	Node right;
+import huffman.CodecMetrics.Stage;
 
-	public Node(String info, double percent, Node left, Node right) {
-		super();
-		this.info = info;
-		this.percent = percent;
-		this.left = left;
-		this.right = right;
-	}
+public class Huffman {
 
-	public Node(String info, double percent) {
-		this(info, percent, null, null);
-	}
+	public boolean higherPercentInLeft;
+	public boolean isOneOnRight;
+	HuffmanTree tree;
+	HashMap<String, String> result;
+	CodeTable table;
+	CanonicalCode canonicalCode;
+	private double lengthLimitCost;
+	private String encodingString;
+	private CodecMetrics metrics = CodecMetrics.disabled();
 
-	public Node() {
+	public Huffman() {
 		super();
 	}
 
-	public String getInfo() {
-		return info;
-	}
-
-	public void setInfo(String info) {
-		this.info = info;
-	}
-
-	public Node getLeft() {
-		return left;
-	}
-
-	public void setLeft(Node left) {
-		this.left = left;
-	}
-
-	public Node getRight() {
-		return right;
-	}
-
-	public void setRight(Node right) {
-		this.right = right;
-	}
-
-	public double getPercent() {
-		return percent;
-	}
-
-	public void setPercent(double percent) {
-		this.percent = percent;
+	public Huffman(String encodingString, boolean higherPercentInLeft, boolean isOneOnRight) {
+		this(encodingString, higherPercentInLeft, isOneOnRight, false);
 	}
 
-	@Override
-	public String toString() {
-		return "Key : " + info + ", Percent: " + percent + " ";
+	/**
+	 * With {@code canonical} the tree only decides the code lengths and the
+	 * codes are the canonical ones, so the table can be shipped as
+	 * {@link #getCanonicalHeader()}.
+	 */
+	public Huffman(String encodingString, boolean higherPercentInLeft, boolean isOneOnRight, boolean canonical) {
+		this(encodingString, higherPercentInLeft, isOneOnRight, canonical, CodecMetrics.disabled());
 	}
 
-}
-
-class HuffmanTree {
-	Node root;
-
-	public HuffmanTree() {
-		super();
+	/**
+	 * Records the count, build and assign stages and the code in
+	 * {@code metrics}, and later the encode and decode stages of this
+	 * object. Strings have no byte size, so no bytes are recorded.
+	 */
+	public Huffman(String encodingString, boolean higherPercentInLeft, boolean isOneOnRight, boolean canonical,
+			CodecMetrics metrics) {
+		this.encodingString = encodingString;
+		this.higherPercentInLeft = higherPercentInLeft;
+		this.isOneOnRight = isOneOnRight;
+		this.metrics = metrics;
+		build(canonical, CodeTable.MAX_LENGTH);
 	}
 
-	public boolean isLeaf(Node p) {
-		return (p.left == null && p.right == null);
+	/**
+	 * Canonical codes no longer than {@code maxCodeLength} bits, so that
+	 * decoding tables stay small. {@link #getLengthLimitCost()} tells how
+	 * much the limit costs.
+	 */
+	public Huffman(String encodingString, boolean higherPercentInLeft, boolean isOneOnRight, int maxCodeLength) {
+		this(encodingString, higherPercentInLeft, isOneOnRight, maxCodeLength, CodecMetrics.disabled());
 	}
 
-	public String breadthFirst() {
-		StringBuilder sb = new StringBuilder();
-		Queue<Node> queue = new LinkedList<>();
-		Queue<Integer> level = new LinkedList<>();
-		if (root != null) {
-			queue.offer(root);
-			level.offer(1);
-		}
-		Node p;
-		Integer i, currentLevel = 1;
-		while (!queue.isEmpty()) {
-			p = queue.poll();
-			i = level.poll();
-			if (i > currentLevel) {
-				sb.append(System.lineSeparator());
-				currentLevel = i;
-			}
-			sb.append(p);
-			if (p.left != null) {
-				queue.add(p.left);
-				level.add(i + 1);
-			}
-			if (p.right != null) {
-				queue.add(p.right);
-				level.add(i + 1);
-			}
+	public Huffman(String encodingString, boolean higherPercentInLeft, boolean isOneOnRight, int maxCodeLength,
+			CodecMetrics metrics) {
+		this.encodingString = encodingString;
+		this.higherPercentInLeft = higherPercentInLeft;
+		this.isOneOnRight = isOneOnRight;
+		this.metrics = metrics;
+		build(true, maxCodeLength);
+	}
+
+	/**
+	 * Builds the tree and the table. A tree deeper than
+	 * {@code maxCodeLength}, which skewed counts such as Fibonacci numbers
+	 * give, is only used for its lengths: the codes are then the canonical
+	 * codes of {@link LengthLimiter} lengths, even without {@code canonical}.
+	 */
+	private void build(boolean canonical, int maxCodeLength) {
+		long start = metrics.start();
+		long[] counts = Histogram.count(encodingString);
+		metrics.stop(Stage.COUNT, start);
+		start = metrics.start();
+		tree = new HuffmanTree();
+		buildHuffmanTree(leaves(encodingString, counts));
+		byte[] unlimited = Arrays.copyOf(tree.codeLengths(), counts.length);
+		CanonicalCode code = new CanonicalCode(unlimited, higherPercentInLeft, isOneOnRight);
+		boolean limited = code.maxLength() > maxCodeLength;
+		if (limited) {
+			code = new CanonicalCode(LengthLimiter.limit(counts, maxCodeLength), higherPercentInLeft, isOneOnRight);
+			lengthLimitCost = LengthLimiter.cost(counts, code.lengths, unlimited);
 		}
-		return sb + "";
+		metrics.stop(Stage.BUILD, start);
+		metrics.code(counts, code.lengths);
+		start = metrics.start();
+		table = canonical || limited ? code.table() : tree.codeTable(isOneOnRight);
+		metrics.stop(Stage.ASSIGN, start);
+		canonicalCode = canonical ? code : null;
+		result = table.toResult();
+	}
+
+	/**
+	 * Rebuilds a decoder from the output of {@link #getCanonicalHeader()}.
+	 */
+	public static Huffman fromCanonicalHeader(byte[] header) {
+		Huffman huffman = new Huffman();
+		huffman.canonicalCode = CanonicalCode.of(header);
+		huffman.higherPercentInLeft = huffman.canonicalCode.higherPercentInLeft;
+		huffman.isOneOnRight = huffman.canonicalCode.isOneOnRight;
+		huffman.table = huffman.canonicalCode.table();
+		huffman.result = huffman.table.toResult();
+		return huffman;
+	}
+
+	public byte[] getCanonicalHeader() {
+		if (canonicalCode == null)
+			throw new IllegalStateException("Not built with canonical codes");
+		return canonicalCode.toByteArray();
+	}
+
+	/**
+	 * Returns an immutable codec of the canonical code that can be shared
+	 * between threads, unlike this object.
+	 */
+	public HuffmanCodec getCodec() {
+		if (canonicalCode == null)
+			throw new IllegalStateException("Not built with canonical codes");
+		return new HuffmanCodec(canonicalCode);
+	}
+
+	/**
+	 * Returns the fraction of bits the maximum code length adds to the
+	 * encoding, 0 when the optimal code already fits.
+	 */
+	public double getLengthLimitCost() {
+		return lengthLimitCost;
+	}
+
+	/**
+	 * Returns the code length of every symbol of a byte or char alphabet
+	 * given its count.
+	 */
+	static byte[] codeLengths(long[] counts, boolean higherPercentInLeft) {
+		return HuffmanTree.of(counts, higherPercentInLeft).codeLengths();
 	}
 
-	public void depthFirst(Node p, String path, HashMap<String, String> result, boolean isOneOnRight) {
-		if (p != null) {
-			if (isLeaf(p)) {
-				result.put(p.info, new StringBuffer(path).toString());
-			}
-			if (isOneOnRight)
-				path += 0;
-			else
-				path += 1;
-			depthFirst(p.left, path, result, isOneOnRight);
-			path = path.substring(0, path.length() - 1);
-			if (isOneOnRight)
-				path += 1;
-			else
-				path += 0;
-			depthFirst(p.right, path, result, isOneOnRight);
-			path = path.substring(0, path.length() - 1);
-		}
+	public String getDecoding() {
+		return encode().toBitString();
 	}
-}
 
-public class Huffman {
-
-	public boolean higherPercentInLeft;
-	public boolean isOneOnRight;
-	HuffmanTree tree;
-	HashMap<String, String> result;
-	private String encodingString;
-
-	public Huffman() {
-		super();
+	public byte[] getPackedDecoding() {
+		return encode().toByteArray();
 	}
 
-	public Huffman(String encodingString, boolean higherPercentInLeft, boolean isOneOnRight) {
-		tree = new HuffmanTree();
-		this.encodingString = encodingString;
-		this.higherPercentInLeft = higherPercentInLeft;
-		this.isOneOnRight = isOneOnRight;
-		List<Node> list = satistic(encodingString);
-		buildHuffmanTree(list);
-		result = new HashMap<>();
-		String path = "";
-		tree.depthFirst(tree.root, path, result, isOneOnRight);
+	public long getPackedBitLength() {
+		return table.bitLength(encodingString);
 	}
 
-	public String getDecoding() {
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < encodingString.length(); i++) {
-			sb.append(result.get(encodingString.charAt(i) + ""));
-		}
-		return sb + "";
+	private BitWriter encode() {
+		long start = metrics.start();
+		BitWriter out = new BitWriter((int) Math.min((getPackedBitLength() >>> 3) + 8, Integer.MAX_VALUE - 8));
+		table.encode(encodingString, out);
+		metrics.stop(Stage.ENCODE, start);
+		return out;
 	}
 
 	public String getResult() {
 		StringBuilder sb = new StringBuilder();
-		for (String key : result.keySet()) {
-			sb.append(key + " : " + result.get(key) + System.lineSeparator());
+		for (int symbol = 0; symbol < table.lengths.length; symbol++) {
+			if (table.lengths[symbol] != 0)
+				sb.append((char) symbol).append(" : ").append(CodeTable.toBits(table.codes[symbol], table.lengths[symbol]))
+						.append(System.lineSeparator());
 		}
-		return sb + "";
+		return sb.toString();
 	}
 
 	public String getEncoding(String decodingString) {
-		StringBuilder sb = new StringBuilder(), s = new StringBuilder();
-		int i = 0;
-		String str = null;
-		while (i < decodingString.length()) {
-			boolean check = false;
-			while (i < decodingString.length() && !check) {
-				s.append(decodingString.charAt(i));
-				for (String key : result.keySet()) {
-					if (result.get(key).equalsIgnoreCase(s.toString().trim())) {
-						check = true;
-						str = new String(key);
-						break;
-					}
-				}
-				i++;
-			}
-			while (i < decodingString.length() && check) {
-				s.append(decodingString.charAt(i));
-				i++;
-				boolean bcheck = false;
-				for (String key : result.keySet()) {
-					if (result.get(key).equalsIgnoreCase(s.toString().trim())) {
-						bcheck = true;
-						str = new String(key);
-						break;
-					}
-				}
-				if (!bcheck) {
-					sb.append(str);
-					s = new StringBuilder();
-					str = null;
-					i--;
-					break;
-				}
-			}
-		}
-		if (str != null)
-			sb.append(str);
-		return sb + "";
+		long start = metrics.start();
+		String decoded = new TableDecoder(result).decode(decodingString);
+		metrics.stop(Stage.DECODE, start);
+		return decoded;
+	}
+
+	public String getEncoding(byte[] packed, long bitLength) {
+		long start = metrics.start();
+		String decoded = new TableDecoder(result).decode(new BitReader(packed, bitLength));
+		metrics.stop(Stage.DECODE, start);
+		return decoded;
 	}
 
 	List<Node> satistic(String encodingString) {
-		int size = encodingString.length();
-		List<Node> list = new ArrayList<>();
-		HashMap<Character, AtomicInteger> hasExisted = new HashMap<>();
-		for (int i = 0; i < encodingString.length(); i++) {
-			if (!hasExisted.containsKey(encodingString.charAt(i))) {
-				hasExisted.put(encodingString.charAt(i), new AtomicInteger(1));
-			} else {
-				hasExisted.get(encodingString.charAt(i)).set(hasExisted.get(encodingString.charAt(i)).intValue() + 1);
-			}
+		return leaves(encodingString, Histogram.count(encodingString));
+	}
+
+	/**
+	 * Returns the leaves in the order the counts used to be kept in: a
+	 * HashMap of chars filled in order of first occurrence. The tree breaks
+	 * ties between equal counts by this order, so keeping it keeps the
+	 * codes in the result table the same as before the counts moved to
+	 * {@link Histogram}. The scan stops once every char has been seen.
+	 */
+	static List<Node> leaves(String s, long[] counts) {
+		int unseen = 0;
+		for (long count : counts) {
+			if (count != 0)
+				unseen++;
 		}
-		for (Character key : hasExisted.keySet()) {
-			list.add(new Node(key + "", hasExisted.get(key).intValue() * 1.0 / size));
+		boolean[] seen = new boolean[counts.length];
+		HashMap<Character, Node> leaves = new HashMap<>();
+		for (int i = 0; unseen > 0; i++) {
+			char c = s.charAt(i);
+			if (!seen[c]) {
+				seen[c] = true;
+				unseen--;
+				leaves.put(c, new Node(c, counts[c]));
+			}
 		}
-		return list;
+		return new ArrayList<>(leaves.values());
 	}
 
 	void buildHuffmanTree(List<Node> list) {
-		while (list.size() > 1) {
-			Node firstNode = null, secondNode = null;
-			for (Node node : list) {
-				if (firstNode == null)
-					firstNode = node;
-				else if (firstNode.percent > node.percent)
-					firstNode = node;
-			}
-			list.remove(firstNode);
-
-			for (Node node : list) {
-				if (secondNode == null)
-					secondNode = node;
-				else if (secondNode.percent > node.percent)
-					secondNode = node;
-			}
-			list.remove(secondNode);
-
-			Node newNode = new Node();
-			newNode.percent = firstNode.percent + secondNode.percent;
-			if (higherPercentInLeft) {
-				newNode.info = secondNode.info + firstNode.info;
-				newNode.left = secondNode;
-				newNode.right = firstNode;
-			} else {
-				newNode.info = firstNode.info + secondNode.info;
-				newNode.left = firstNode;
-				newNode.right = secondNode;
-			}
-			list.add(newNode);
-		}
-		tree.root = list.get(0);
+		tree.build(list, higherPercentInLeft);
 	}
 
 }
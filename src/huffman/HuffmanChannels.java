@@ -0,0 +1,106 @@
+package huffman;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Compressing and decompressing channels over the streams of this package,
+ * in the manner of {@link Channels}. Buffers are copied straight into and out
+ * of the block buffers of the streams. The channels are blocking and not
+ * safe for use by several threads at once.
+ */
+public final class HuffmanChannels {
+	private HuffmanChannels() {
+	}
+
+	/**
+	 * Returns a channel that compresses into {@code channel} with the
+	 * settings of {@code compressor}. The channel is also {@link Flushable},
+	 * see {@link HuffmanOutputStream#flush()}; closing it writes the block
+	 * index and closes {@code channel}.
+	 */
+	public static WritableByteChannel newChannel(WritableByteChannel channel, BlockCompressor compressor)
+			throws IOException {
+		HuffmanOutputStream out = new HuffmanOutputStream(Channels.newOutputStream(channel), compressor);
+		return new Writable(out);
+	}
+
+	/**
+	 * Returns a channel that decompresses what it reads from {@code channel}.
+	 */
+	public static ReadableByteChannel newChannel(ReadableByteChannel channel, BlockCompressor compressor)
+			throws IOException {
+		HuffmanInputStream in = new HuffmanInputStream(Channels.newInputStream(channel), compressor);
+		return new Readable(in);
+	}
+
+	private static final class Writable implements WritableByteChannel, Flushable {
+		private final HuffmanOutputStream out;
+		private boolean open = true;
+
+		Writable(HuffmanOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if (!open)
+				throw new ClosedChannelException();
+			return out.write(src);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (!open)
+				throw new ClosedChannelException();
+			out.flush();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!open)
+				return;
+			open = false;
+			out.close();
+		}
+	}
+
+	private static final class Readable implements ReadableByteChannel {
+		private final HuffmanInputStream in;
+		private boolean open = true;
+
+		Readable(HuffmanInputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (!open)
+				throw new ClosedChannelException();
+			return in.read(dst);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!open)
+				return;
+			open = false;
+			in.close();
+		}
+	}
+}
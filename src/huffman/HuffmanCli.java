@@ -0,0 +1,222 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line entry point that goes straight to the compression engine
+ * without loading Swing:
+ *
+ * <pre>
+ * java -cp Huffman.jar huffman.HuffmanCli compress|decompress|stats [options] [files]
+ * </pre>
+ *
+ * Without files the command reads stdin and writes stdout.
+ */
+public class HuffmanCli {
+	static final String SUFFIX = ".huf";
+
+	private static final String USAGE = "Usage: huffman compress|decompress|stats [options] [files]" + System.lineSeparator()
+			+ "  -c        write to stdout instead of files" + System.lineSeparator()
+			+ "  -f        overwrite existing output files" + System.lineSeparator()
+			+ "  -v        print stage times and code statistics to stderr" + System.lineSeparator()
+			+ "  -4        split every block into four interleaved streams (compress)" + System.lineSeparator()
+			+ "  -n        store no block checksums (compress)" + System.lineSeparator()
+			+ "  -k        skip corrupt blocks with a warning instead of failing (decompress)" + System.lineSeparator()
+			+ "  -b size   block size in bytes (compress, default " + BlockCompressor.DEFAULT_BLOCK_SIZE + ")" + System.lineSeparator()
+			+ "  -t count  worker threads (default: available processors)" + System.lineSeparator()
+			+ "  -l bits   maximum code length, 8 to " + CodeTable.MAX_LENGTH + " (default " + CodeTable.MAX_LENGTH + ")"
+			+ System.lineSeparator()
+			+ "Without files the command reads stdin and writes stdout.";
+
+	private boolean toStdout;
+	private boolean force;
+	private boolean verbose;
+	private boolean interleaved;
+	private boolean unchecked;
+	private boolean keepGoing;
+	private int blockSize = BlockCompressor.DEFAULT_BLOCK_SIZE;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int maxCodeLength = CodeTable.MAX_LENGTH;
+	private final List<String> files = new ArrayList<>();
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	static int run(String[] args) {
+		if (args.length == 0) {
+			System.err.println(USAGE);
+			return 2;
+		}
+		HuffmanCli cli = new HuffmanCli();
+		try {
+			cli.parse(args);
+		} catch (IllegalArgumentException ex) {
+			System.err.println("huffman: " + ex.getMessage());
+			System.err.println(USAGE);
+			return 2;
+		}
+		ForkJoinPool pool = new ForkJoinPool(cli.threads);
+		try {
+			BlockCompressor compressor = new BlockCompressor(cli.blockSize, pool, cli.maxCodeLength);
+			compressor.setInterleaved(cli.interleaved);
+			compressor.setChecked(!cli.unchecked);
+			if (cli.keepGoing)
+				compressor.setCorruptBlockHandler(ex -> System.err.println("huffman: skipped " + ex.getMessage()));
+			if (cli.verbose)
+				compressor.setMetrics(new CodecMetrics());
+			int status = cli.execute(args[0], compressor);
+			if (cli.verbose)
+				System.err.println("huffman: " + compressor.getMetrics());
+			return status;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void parse(String[] args) {
+		String command = args[0];
+		if (!command.equals("compress") && !command.equals("decompress") && !command.equals("stats"))
+			throw new IllegalArgumentException("unknown command " + command);
+		for (int i = 1; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-c")) {
+				toStdout = true;
+			} else if (arg.equals("-f")) {
+				force = true;
+			} else if (arg.equals("-v")) {
+				verbose = true;
+			} else if (arg.equals("-4")) {
+				interleaved = true;
+			} else if (arg.equals("-n")) {
+				unchecked = true;
+			} else if (arg.equals("-k")) {
+				keepGoing = true;
+			} else if (arg.equals("-b") || arg.equals("-t") || arg.equals("-l")) {
+				if (++i == args.length)
+					throw new IllegalArgumentException(arg + " needs a value");
+				int value;
+				try {
+					value = Integer.parseInt(args[i]);
+				} catch (NumberFormatException ex) {
+					throw new IllegalArgumentException("invalid number " + args[i]);
+				}
+				if (value <= 0)
+					throw new IllegalArgumentException(arg + " must be positive");
+				if (arg.equals("-b"))
+					blockSize = value;
+				else if (arg.equals("-t"))
+					threads = value;
+				else if (value >= 8 && value <= CodeTable.MAX_LENGTH)
+					maxCodeLength = value;
+				else
+					throw new IllegalArgumentException("-l must be between 8 and " + CodeTable.MAX_LENGTH);
+			} else if (arg.equals("-") || !arg.startsWith("-")) {
+				files.add(arg);
+			} else {
+				throw new IllegalArgumentException("unknown option " + arg);
+			}
+		}
+	}
+
+	private int execute(String command, BlockCompressor compressor) {
+		if (files.isEmpty())
+			files.add("-");
+		int status = 0;
+		for (String file : files) {
+			try {
+				if (command.equals("compress"))
+					compress(file, compressor);
+				else if (command.equals("decompress"))
+					decompress(file, compressor);
+				else
+					stats(file);
+			} catch (IOException | RuntimeException ex) {
+				System.err.println("huffman: " + file + ": " + ex);
+				status = 1;
+			}
+		}
+		return status;
+	}
+
+	private void compress(String file, BlockCompressor compressor) throws IOException {
+		try (InputStream in = open(file); OutputStream out = create(file, file + SUFFIX)) {
+			compressor.compress(in, out);
+		}
+	}
+
+	private void decompress(String file, BlockCompressor compressor) throws IOException {
+		if (file.equals("-") || toStdout) {
+			try (InputStream in = open(file); OutputStream out = create(file, null)) {
+				compressor.decompress(in, out);
+			}
+			return;
+		}
+		String name = file.endsWith(SUFFIX) ? file.substring(0, file.length() - SUFFIX.length()) : file + ".out";
+		Path output = Paths.get(name);
+		if (!force && Files.exists(output))
+			throw new FileAlreadyExistsException(name);
+		compressor.decompress(Paths.get(file), output);
+	}
+
+	private void stats(String file) throws IOException {
+		long[] counts = new long[256];
+		long length;
+		try (InputStream in = open(file)) {
+			length = HuffmanCompressor.count(in, counts);
+		}
+		CanonicalCode code = new HuffmanCompressor(true, true, maxCodeLength).code(counts);
+		byte[] unlimited = Arrays.copyOf(Huffman.codeLengths(counts, true), counts.length);
+		double entropy = 0;
+		long bits = 0;
+		int symbols = 0;
+		for (int symbol = 0; symbol < counts.length; symbol++) {
+			if (counts[symbol] == 0)
+				continue;
+			double p = counts[symbol] * 1.0 / length;
+			entropy -= p * Math.log(p) / Math.log(2);
+			bits += counts[symbol] * code.lengths[symbol];
+			symbols++;
+		}
+		System.out.printf("%s: %d bytes, %d symbols, entropy %.3f bits/byte, code %.3f bits/byte, max code length %d, "
+				+ "length limit cost %.2f%%, ratio %.3f%n", file, length, symbols, entropy,
+				length == 0 ? 0.0 : bits * 1.0 / length, code.maxLength(),
+				100 * LengthLimiter.cost(counts, code.lengths, unlimited), length == 0 ? 1.0 : bits / 8.0 / length);
+	}
+
+	private static InputStream open(String file) throws IOException {
+		if (file.equals("-"))
+			return new BufferedInputStream(System.in, HuffmanCompressor.BUFFER_SIZE);
+		return new BufferedInputStream(Files.newInputStream(Paths.get(file)), HuffmanCompressor.BUFFER_SIZE);
+	}
+
+	private OutputStream create(String file, String name) throws IOException {
+		if (file.equals("-") || toStdout || name == null) {
+			// System.out is shared between files and must stay open
+			return new BufferedOutputStream(System.out, HuffmanCompressor.BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					flush();
+				}
+			};
+		}
+		Path output = Paths.get(name);
+		if (force)
+			return new BufferedOutputStream(Files.newOutputStream(output), HuffmanCompressor.BUFFER_SIZE);
+		return new BufferedOutputStream(Files.newOutputStream(output, StandardOpenOption.CREATE_NEW),
+				HuffmanCompressor.BUFFER_SIZE);
+	}
+}
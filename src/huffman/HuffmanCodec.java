@@ -0,0 +1,98 @@
+package huffman;
+
+import java.util.Arrays;
+
+/**
+ * Immutable encoder and decoder of one canonical code. Everything is built in
+ * the constructor, so one instance can be shared by any number of threads
+ * without locking; see {@link CodecCache} for reusing instances by their
+ * header.
+ */
+public final class HuffmanCodec {
+	private final byte[] header;
+	private final long fingerprint;
+	private final CodeTable table;
+	private final TableDecoder decoder;
+
+	HuffmanCodec(CanonicalCode code) {
+		this.header = code.toByteArray();
+		this.fingerprint = fingerprint(header);
+		this.table = code.table();
+		this.decoder = new TableDecoder(table);
+	}
+
+	/**
+	 * Builds the codec of a header of {@link Huffman#getCanonicalHeader()}.
+	 */
+	public static HuffmanCodec of(byte[] header) {
+		return new HuffmanCodec(CanonicalCode.of(header));
+	}
+
+	/**
+	 * Returns the 64-bit FNV-1a hash of a canonical code header.
+	 */
+	static long fingerprint(byte[] header) {
+		long hash = 0xCBF29CE484222325L;
+		for (byte b : header)
+			hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+		return hash;
+	}
+
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	public byte[] getHeader() {
+		return header.clone();
+	}
+
+	boolean hasHeader(byte[] other) {
+		return Arrays.equals(header, other);
+	}
+
+	/**
+	 * Returns the number of bits {@link #encode(CharSequence)} produces.
+	 *
+	 * @throws IllegalArgumentException if a char has no code
+	 */
+	public long bitLength(CharSequence text) {
+		long bits = 0;
+		for (int i = 0; i < text.length(); i++)
+			bits += length(text.charAt(i));
+		return bits;
+	}
+
+	/**
+	 * Packs the codes of {@code text}, most significant bit first, with the
+	 * last byte padded with zeros.
+	 */
+	public byte[] encode(CharSequence text) {
+		BitWriter out = new BitWriter((int) Math.min((bitLength(text) >>> 3) + 8, Integer.MAX_VALUE - 8));
+		table.encode(text, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns the codes of {@code text} as a string of '0' and '1'.
+	 */
+	public String toBitString(CharSequence text) {
+		BitWriter out = new BitWriter((int) Math.min((bitLength(text) >>> 3) + 8, Integer.MAX_VALUE - 8));
+		table.encode(text, out);
+		return out.toBitString();
+	}
+
+	public String decode(byte[] packed, long bitLength) {
+		return decoder.decode(new BitReader(packed, bitLength));
+	}
+
+	public String decode(CharSequence bits) {
+		return decoder.decode(bits);
+	}
+
+	private int length(char c) {
+		int length = c < table.lengths.length ? table.lengths[c] : 0;
+		if (length == 0)
+			throw new IllegalArgumentException("No code for '" + c + "'");
+		return length;
+	}
+}
@@ -0,0 +1,349 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import huffman.CodecMetrics.Stage;
+
+/**
+ * Compresses byte streams that do not fit in memory. The input is read twice,
+ * once to count the bytes and once to encode them with a canonical code, and
+ * both passes go through fixed size buffers. Decompression reads the stream
+ * once in constant memory.
+ *
+ * Format: the magic "HUF1", the number of bytes as a varint, the
+ * {@link CanonicalCode} header, then the packed codes. With a checkpoint
+ * interval the codes are followed by the interval, the number of checkpoints
+ * and the bit offset into the codes of every interval-th byte, then by the
+ * offset of that index and the magic "HUFC"; {@link CheckpointReader} uses
+ * them to decode any range of bytes from the closest checkpoint. Decoders
+ * that stop after the codes do not see the index.
+ */
+public class HuffmanCompressor {
+	static final int MAGIC = 0x48554631;
+	static final int BUFFER_SIZE = 1 << 16;
+	static final int MAP_WINDOW = 1 << 30;
+	static final int CHECKPOINT_MAGIC = 0x48554643;
+	static final int CHECKPOINT_FOOTER_SIZE = 12;
+
+	private final boolean higherPercentInLeft;
+	private final boolean isOneOnRight;
+	private final int maxCodeLength;
+	private CodecMetrics metrics = CodecMetrics.disabled();
+	private int checkpointInterval;
+
+	public HuffmanCompressor() {
+		this(true, true);
+	}
+
+	public HuffmanCompressor(boolean higherPercentInLeft, boolean isOneOnRight) {
+		this(higherPercentInLeft, isOneOnRight, CodeTable.MAX_LENGTH);
+	}
+
+	/**
+	 * Limits the codes to {@code maxCodeLength} bits, at least 8 so that all
+	 * 256 byte values fit.
+	 */
+	public HuffmanCompressor(boolean higherPercentInLeft, boolean isOneOnRight, int maxCodeLength) {
+		if (maxCodeLength < 8 || maxCodeLength > CodeTable.MAX_LENGTH)
+			throw new IllegalArgumentException("maxCodeLength must be between 8 and " + CodeTable.MAX_LENGTH);
+		this.higherPercentInLeft = higherPercentInLeft;
+		this.isOneOnRight = isOneOnRight;
+		this.maxCodeLength = maxCodeLength;
+	}
+
+	public CodecMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Records the stages of every compression and decompression in
+	 * {@code metrics}.
+	 */
+	public void setMetrics(CodecMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * Writes a checkpoint every {@code interval} bytes of input, or none
+	 * with 0, the default. Smaller intervals make random reads decode less
+	 * and cost 8 bytes of index per checkpoint.
+	 */
+	public void setCheckpointInterval(int interval) {
+		if (interval < 0)
+			throw new IllegalArgumentException("Checkpoint interval must not be negative");
+		this.checkpointInterval = interval;
+	}
+
+	private long[] checkpoints(long length) {
+		if (checkpointInterval == 0)
+			return null;
+		long count = (length + checkpointInterval - 1) / checkpointInterval;
+		if (count > (Integer.MAX_VALUE - 8) / 8)
+			throw new IllegalArgumentException("Checkpoint interval " + checkpointInterval + " is too small for "
+					+ length + " bytes");
+		return new long[(int) count];
+	}
+
+	/**
+	 * Returns the index and footer that follow codes ending at byte
+	 * {@code offset} of the file.
+	 */
+	private byte[] checkpointIndex(long[] checkpoints, long offset) throws IOException {
+		ByteArrayOutputStream index = new ByteArrayOutputStream(8 * checkpoints.length + 20);
+		writeInt(index, checkpointInterval);
+		writeInt(index, checkpoints.length);
+		for (long checkpoint : checkpoints)
+			BlockCompressor.writeLong(index, checkpoint);
+		BlockCompressor.writeLong(index, offset);
+		writeInt(index, CHECKPOINT_MAGIC);
+		return index.toByteArray();
+	}
+
+	public void compress(Path input, OutputStream output) throws IOException {
+		long[] counts = new long[256];
+		long length;
+		long start = metrics.start();
+		try (InputStream in = Files.newInputStream(input)) {
+			length = count(in, counts);
+		}
+		metrics.stop(Stage.COUNT, start);
+		CanonicalCode code = code(counts);
+		start = metrics.start();
+		CodeTable table = code.table();
+		metrics.stop(Stage.ASSIGN, start);
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		writeInt(header, MAGIC);
+		CanonicalCode.writeVarint(header, length);
+		code.write(header);
+		OutputStream out = new BufferedOutputStream(output, BUFFER_SIZE);
+		header.writeTo(out);
+		start = metrics.start();
+		long[] checkpoints = checkpoints(length);
+		long[] encoded = new long[256];
+		try (InputStream in = Files.newInputStream(input)) {
+			encode(in, table, out, checkpointInterval, checkpoints, encoded);
+		}
+		if (!Arrays.equals(encoded, counts))
+			throw new IOException(input + " changed while it was compressed");
+		long size = header.size() + (table.bitLength(counts) + 7) / 8;
+		if (checkpoints != null)
+			out.write(checkpointIndex(checkpoints, size));
+		out.flush();
+		metrics.stop(Stage.ENCODE, start);
+		metrics.bytes(length, size);
+	}
+
+	/**
+	 * Compresses a file into another through memory maps, in windows of up
+	 * to {@link #MAP_WINDOW} bytes. Both passes read the input where it is
+	 * mapped and the output file is sized up front from the counts and
+	 * written in place, so the data never passes through the Java heap.
+	 */
+	public void compressMapped(Path input, Path output) throws IOException {
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long length = in.size();
+			long[] counts = new long[256];
+			long start = metrics.start();
+			for (long position = 0; position < length; position += MAP_WINDOW)
+				Histogram.count(in.map(MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, length - position)), counts);
+			metrics.stop(Stage.COUNT, start);
+			CanonicalCode code = code(counts);
+			start = metrics.start();
+			CodeTable table = code.table();
+			metrics.stop(Stage.ASSIGN, start);
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			writeInt(header, MAGIC);
+			CanonicalCode.writeVarint(header, length);
+			code.write(header);
+			long size = header.size() + (table.bitLength(counts) + 7) / 8;
+
+			start = metrics.start();
+			long[] checkpoints = checkpoints(length);
+			long base = 0;
+			ByteBuffer target = out.map(MapMode.READ_WRITE, base, Math.min(MAP_WINDOW, size));
+			target.put(header.toByteArray());
+			BitWriter bits = new BitWriter(target);
+			long[] encoded = new long[256];
+			for (long position = 0; position < length; position += MAP_WINDOW) {
+				ByteBuffer window = in.map(MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, length - position));
+				Histogram.count(window, encoded);
+				for (int off = 0; off < window.limit(); off += BUFFER_SIZE) {
+					int n = Math.min(BUFFER_SIZE, window.limit() - off);
+					// a byte takes at most 4 bytes of output
+					if (target.remaining() < 4 * n && base + target.limit() < size) {
+						base += target.position();
+						target = out.map(MapMode.READ_WRITE, base, Math.min(MAP_WINDOW, size - base));
+						bits.setTarget(target);
+					}
+					if (checkpoints == null) {
+						table.encode(window, off, n, bits);
+						continue;
+					}
+					for (int end = off + n, from = off; from < end;) {
+						long at = position + from;
+						int to = (int) Math.min(end, from + checkpointInterval - at % checkpointInterval);
+						if (at % checkpointInterval == 0)
+							checkpoints[(int) (at / checkpointInterval)] = bits.bitLength();
+						table.encode(window, from, to - from, bits);
+						from = to;
+					}
+				}
+			}
+			if (!Arrays.equals(encoded, counts))
+				throw new IOException(input + " changed while it was compressed");
+			byte[] tail = bits.toByteArray();
+			if (target.remaining() < tail.length) {
+				base += target.position();
+				target = out.map(MapMode.READ_WRITE, base, size - base);
+			}
+			target.put(tail);
+			if (checkpoints != null) {
+				ByteBuffer index = ByteBuffer.wrap(checkpointIndex(checkpoints, size));
+				for (long position = size; index.hasRemaining();)
+					position += out.write(index, position);
+			}
+			metrics.stop(Stage.ENCODE, start);
+			metrics.bytes(length, size);
+		}
+	}
+
+	public void decompress(InputStream input, OutputStream output) throws IOException {
+		long start = metrics.start();
+		InputStream in = new BufferedInputStream(input, BUFFER_SIZE);
+		if (readInt(in) != MAGIC)
+			throw new IOException("Not a Huffman compressed stream");
+		long length = CanonicalCode.readVarLong(in);
+		long total = length;
+		CanonicalCode code = CanonicalCode.read(in);
+		if (code.lengths.length > 256)
+			throw new IOException("Code length header is not for bytes");
+		TableDecoder decoder = new TableDecoder(code.table());
+		BitReader bits = new BitReader(in, BUFFER_SIZE);
+		int[] symbols = new int[BUFFER_SIZE];
+		byte[] bytes = new byte[BUFFER_SIZE];
+		try {
+			while (length > 0) {
+				int n = decoder.decode(bits, symbols, 0, (int) Math.min(length, symbols.length));
+				if (n == 0)
+					throw new EOFException("Compressed data ends " + length + " bytes early");
+				for (int i = 0; i < n; i++)
+					bytes[i] = (byte) symbols[i];
+				output.write(bytes, 0, n);
+				length -= n;
+			}
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+		output.flush();
+		metrics.stop(Stage.DECODE, start);
+		if (metrics.isEnabled()) {
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			writeInt(header, MAGIC);
+			CanonicalCode.writeVarint(header, total);
+			code.write(header);
+			metrics.bytes(total, header.size() + (bits.position() + 7) / 8);
+		}
+	}
+
+	static long count(InputStream in, long[] counts) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long length = 0;
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			Histogram.count(buffer, 0, n, counts);
+			length += n;
+		}
+		return length;
+	}
+
+	/**
+	 * Builds the canonical code of the counts. When the optimal code has
+	 * codes longer than the maximum length the lengths come from
+	 * {@link LengthLimiter} instead.
+	 */
+	CanonicalCode code(long[] counts) {
+		long start = metrics.start();
+		byte[] lengths = Arrays.copyOf(Huffman.codeLengths(counts, higherPercentInLeft), counts.length);
+		CanonicalCode code = new CanonicalCode(lengths, higherPercentInLeft, isOneOnRight);
+		if (code.maxLength() > maxCodeLength)
+			code = new CanonicalCode(LengthLimiter.limit(counts, maxCodeLength), higherPercentInLeft, isOneOnRight);
+		metrics.stop(Stage.BUILD, start);
+		metrics.code(counts, code.lengths);
+		return code;
+	}
+
+	static long encode(InputStream in, CodeTable table, OutputStream out) throws IOException {
+		return encode(in, table, out, 0, null, null);
+	}
+
+	/**
+	 * Encodes the stream and, unless {@code checkpoints} is null, stores the
+	 * bit offset of every {@code interval}-th byte in it. Checkpoints past
+	 * the end of the array are dropped; the caller finds out from the length
+	 * returned. Unless {@code counts} is null, the bytes encoded are added to
+	 * it, so that a two-pass caller can tell whether its input changed: a
+	 * byte the first pass did not see has no code and would be written as
+	 * no bits at all.
+	 */
+	static long encode(InputStream in, CodeTable table, OutputStream out, int interval, long[] checkpoints,
+			long[] counts) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		BitWriter bits = new BitWriter(BUFFER_SIZE);
+		long length = 0;
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			if (counts != null)
+				Histogram.count(buffer, 0, n, counts);
+			if (checkpoints == null) {
+				table.encode(buffer, 0, n, bits);
+			} else {
+				for (int from = 0; from < n;) {
+					long at = length + from;
+					int to = (int) Math.min(n, from + interval - at % interval);
+					if (at % interval == 0 && at / interval < checkpoints.length)
+						checkpoints[(int) (at / interval)] = bits.bitLength();
+					table.encode(buffer, from, to - from, bits);
+					from = to;
+				}
+			}
+			bits.drainTo(out);
+			length += n;
+		}
+		out.write(bits.toByteArray());
+		return length;
+	}
+
+	static void writeInt(OutputStream out, int value) throws IOException {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	static int readInt(InputStream in) throws IOException {
+		int value = 0;
+		for (int i = 0; i < 4; i++)
+			value = value << 8 | CanonicalCode.readByte(in);
+		return value;
+	}
+}
@@ -0,0 +1,181 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Code trained once from a sample corpus and shared by many small messages,
+ * which then cost no counting, no tree and no table of their own. Bytes the
+ * corpus did not contain are sent as an escape code followed by the byte.
+ *
+ * Message format: the number of bytes and the number of escaped bytes as
+ * varints, the escaped bytes, then the packed codes. Dictionary file format:
+ * the magic "HUFD", the id, then the {@link CanonicalCode} header.
+ */
+public final class HuffmanDictionary {
+	static final int MAGIC = 0x48554644;
+	static final String SUFFIX = ".hufd";
+	static final int ESCAPE = 256;
+	public static final int DEFAULT_MAX_CODE_LENGTH = 12;
+
+	private final String id;
+	private final CanonicalCode code;
+	private final CodeTable table;
+	private final TableDecoder decoder;
+
+	HuffmanDictionary(String id, CanonicalCode code) {
+		checkId(id);
+		if (code.lengths.length != ESCAPE + 1 || code.lengths[ESCAPE] == 0)
+			throw new IllegalArgumentException("Dictionary is not a byte code with an escape");
+		this.id = id;
+		this.code = code;
+		this.table = code.table();
+		this.decoder = new TableDecoder(table);
+	}
+
+	/**
+	 * Rejects ids that are not a plain file name, so that an id can never
+	 * name a file outside the directory of a {@link DictionaryCache}.
+	 */
+	static void checkId(String id) {
+		if (!id.matches("[A-Za-z0-9][A-Za-z0-9._-]*"))
+			throw new IllegalArgumentException("Invalid dictionary id '" + id + "'");
+	}
+
+	public static HuffmanDictionary train(String id, InputStream corpus) throws IOException {
+		return train(id, corpus, DEFAULT_MAX_CODE_LENGTH);
+	}
+
+	/**
+	 * Builds the code of the bytes of {@code corpus}, no longer than
+	 * {@code maxCodeLength} bits, at least 9 so that every byte and the escape
+	 * fit.
+	 */
+	public static HuffmanDictionary train(String id, InputStream corpus, int maxCodeLength) throws IOException {
+		if (maxCodeLength <= 8 || maxCodeLength > CodeTable.MAX_LENGTH)
+			throw new IllegalArgumentException("maxCodeLength must be between 9 and " + CodeTable.MAX_LENGTH);
+		long[] counts = new long[ESCAPE + 1];
+		HuffmanCompressor.count(corpus, counts);
+		counts[ESCAPE] = 1;
+		byte[] lengths = Arrays.copyOf(Huffman.codeLengths(counts, true), counts.length);
+		CanonicalCode code = new CanonicalCode(lengths, true, true);
+		if (code.maxLength() > maxCodeLength)
+			code = new CanonicalCode(LengthLimiter.limit(counts, maxCodeLength), true, true);
+		return new HuffmanDictionary(id, code);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void save(Path file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeUTF(id);
+			code.write(out);
+		}
+	}
+
+	public static HuffmanDictionary load(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a Huffman dictionary");
+			String id = in.readUTF();
+			CanonicalCode code = CanonicalCode.read(in);
+			try {
+				return new HuffmanDictionary(id, code);
+			} catch (IllegalArgumentException ex) {
+				throw new IOException(ex.getMessage(), ex);
+			}
+		}
+	}
+
+	public byte[] encode(String message) {
+		return encode(message.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public byte[] encode(byte[] message) {
+		int escapes = 0;
+		for (byte b : message) {
+			if (table.lengths[b & 0xFF] == 0)
+				escapes++;
+		}
+		BitWriter bits = new BitWriter(message.length + 16);
+		writeVarint(bits, message.length);
+		writeVarint(bits, escapes);
+		if (escapes != 0) {
+			for (byte b : message) {
+				if (table.lengths[b & 0xFF] == 0)
+					bits.write(b & 0xFF, 8);
+			}
+		}
+		int[] codes = table.codes;
+		byte[] lengths = table.lengths;
+		for (byte b : message) {
+			int symbol = lengths[b & 0xFF] == 0 ? ESCAPE : b & 0xFF;
+			bits.write(codes[symbol], lengths[symbol]);
+		}
+		return bits.toByteArray();
+	}
+
+	private static void writeVarint(BitWriter bits, int value) {
+		while ((value & ~0x7F) != 0) {
+			bits.write(value & 0x7F | 0x80, 8);
+			value >>>= 7;
+		}
+		bits.write(value, 8);
+	}
+
+	public String decodeString(byte[] encoded) {
+		return new String(decode(encoded), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decodes a message of {@link #encode(byte[])}.
+	 *
+	 * @throws IllegalArgumentException if the message is truncated or was not
+	 *             encoded with this dictionary
+	 */
+	public byte[] decode(byte[] encoded) {
+		try {
+			ByteArrayInputStream in = new ByteArrayInputStream(encoded);
+			int length = CanonicalCode.readVarint(in);
+			int escapes = CanonicalCode.readVarint(in);
+			int offset = encoded.length - in.available();
+			if (escapes > length || escapes > in.available() || length > (in.available() - escapes) * 8L)
+				throw new IOException("Invalid message header");
+			BitReader bits = new BitReader(encoded, offset + escapes, (encoded.length - offset - escapes) * 8L);
+			byte[] data = new byte[length];
+			int[] symbols = new int[length];
+			int done = 0;
+			while (done < length) {
+				int n = decoder.decode(bits, symbols, done, length - done);
+				if (n == 0)
+					throw new IOException("Message ends " + (length - done) + " bytes early");
+				done += n;
+			}
+			int literal = offset;
+			for (int i = 0; i < length; i++) {
+				int symbol = symbols[i];
+				if (symbol == ESCAPE) {
+					if (literal == offset + escapes)
+						throw new IOException("Message has more escapes than escaped bytes");
+					symbol = encoded[literal++];
+				}
+				data[i] = (byte) symbol;
+			}
+			return data;
+		} catch (IOException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decompresses a {@link BlockCompressor} or {@link HuffmanOutputStream}
+ * stream block by block on the calling thread, for code that expects a
+ * {@link java.util.zip.InflaterInputStream}. One block is decoded at a time
+ * into a buffer that is kept, with the buffer of compressed bytes, from one
+ * block to the next. Corrupt blocks go to the handler of the
+ * {@link BlockCompressor}, if it has one, and are left out.
+ */
+public class HuffmanInputStream extends FilterInputStream {
+	private final BlockCompressor compressor;
+	private final BlockCompressor.Header header;
+	private byte[] payload = new byte[0];
+	private byte[] data = new byte[0];
+	private int size;
+	private int next;
+	private int block;
+	private long position;
+	private boolean finished;
+	private boolean closed;
+
+	public HuffmanInputStream(InputStream in) throws IOException {
+		this(in, new BlockCompressor());
+	}
+
+	/**
+	 * Reads the header, so that a stream in another format fails here.
+	 */
+	public HuffmanInputStream(InputStream in, BlockCompressor compressor) throws IOException {
+		super(new BufferedInputStream(in, HuffmanCompressor.BUFFER_SIZE));
+		this.compressor = compressor;
+		this.header = BlockCompressor.Header.read(this.in);
+		this.position = header.size;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill())
+			return -1;
+		return data[next++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int n = Math.min(len, size - next);
+		System.arraycopy(data, next, b, off, n);
+		next += n;
+		return n;
+	}
+
+	/**
+	 * Reads into {@code dst}, for
+	 * {@link HuffmanChannels#newChannel(java.nio.channels.ReadableByteChannel, BlockCompressor)}.
+	 */
+	int read(ByteBuffer dst) throws IOException {
+		if (!dst.hasRemaining())
+			return 0;
+		if (!fill())
+			return -1;
+		int n = Math.min(dst.remaining(), size - next);
+		dst.put(data, next, n);
+		next += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && fill()) {
+			int step = (int) Math.min(n - skipped, size - next);
+			next += step;
+			skipped += step;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Returns the bytes left of the block decoded last.
+	 */
+	@Override
+	public int available() throws IOException {
+		ensureOpen();
+		return size - next;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		in.close();
+	}
+
+	/**
+	 * Decodes blocks until one has bytes left, and returns false at the end
+	 * of the stream.
+	 */
+	private boolean fill() throws IOException {
+		ensureOpen();
+		while (next == size) {
+			if (finished)
+				return false;
+			int length = HuffmanCompressor.readInt(in);
+			if (length == 0) {
+				skipIndex();
+				finished = true;
+				return false;
+			}
+			int compressed = HuffmanCompressor.readInt(in);
+			BlockCompressor.checkPayload(compressed, header, block, position);
+			if (payload.length < compressed)
+				payload = new byte[Math.max(compressed, Math.min(2 * payload.length, Integer.MAX_VALUE - 8))];
+			if (BlockCompressor.readFully(in, payload, 0, compressed) < compressed)
+				throw new CorruptBlockException("Block is cut short", block, position, null);
+			next = size = 0;
+			try {
+				if (length < 0 || length > header.blockSize)
+					throw new CorruptBlockException("Invalid block length " + length, block, position, null);
+				if (data.length < length)
+					data = new byte[length];
+				try {
+					compressor.decodeBlock(payload, compressed, data, length, header, block, position);
+				} catch (UncheckedIOException ex) {
+					throw ex.getCause();
+				}
+				size = length;
+			} catch (CorruptBlockException ex) {
+				compressor.corrupt(ex);
+			} finally {
+				block++;
+				position += 8 + compressed;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads past the block index, so that the stream ends where the
+	 * compressed data does.
+	 */
+	private void skipIndex() throws IOException {
+		long n = 8L * HuffmanCompressor.readInt(in) + BlockCompressor.FOOTER_SIZE;
+		if (n < 0)
+			throw new IOException("Block index is corrupt");
+		while (n > 0) {
+			long skipped = in.skip(n);
+			if (skipped <= 0) {
+				if (in.read() < 0)
+					throw new EOFException("Block index is cut short");
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+	}
+}
@@ -0,0 +1,163 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compresses a stream into the {@link BlockCompressor} format block by block
+ * on the calling thread, for code that expects a
+ * {@link java.util.zip.DeflaterOutputStream}. Bytes are gathered until a
+ * block is full; writes of a whole block or more are coded straight from the
+ * caller's array. The block buffer, the buffer the codes are packed into
+ * and the buffers of the encoder are kept from one block to the next, and
+ * each block goes to the underlying stream in a single write together with
+ * its lengths, so that an unbuffered channel sees one write per block.
+ *
+ * {@link #flush()} codes the bytes gathered so far as a short block, so that
+ * the other side can decode them before more arrive; frequent flushes cost
+ * ratio. {@link #finish()} writes the block index without closing the
+ * underlying stream.
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+	private final BlockCompressor compressor;
+	private final byte[] block;
+	private final BitWriter bits;
+	private final BlockCompressor.Scratch scratch = new BlockCompressor.Scratch();
+	private final List<Long> offsets = new ArrayList<>();
+	private int size;
+	private long position;
+	private boolean finished;
+
+	public HuffmanOutputStream(OutputStream out) throws IOException {
+		this(out, new BlockCompressor());
+	}
+
+	/**
+	 * Uses the block size and settings of {@code compressor}; its pool is
+	 * not used.
+	 */
+	public HuffmanOutputStream(OutputStream out, BlockCompressor compressor) throws IOException {
+		super(out);
+		this.compressor = compressor;
+		this.block = new byte[compressor.getBlockSize()];
+		this.bits = new BitWriter(block.length + 1024);
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		this.position = compressor.writeHeader(header);
+		header.writeTo(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		block[size++] = (byte) b;
+		if (size == block.length)
+			writeBlock(block, 0, size);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		ensureOpen();
+		while (len > 0) {
+			if (size == 0 && len >= block.length) {
+				writeBlock(b, off, block.length);
+				off += block.length;
+				len -= block.length;
+				continue;
+			}
+			int n = Math.min(len, block.length - size);
+			System.arraycopy(b, off, block, size, n);
+			size += n;
+			off += n;
+			len -= n;
+			if (size == block.length)
+				writeBlock(block, 0, size);
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of {@code src}, for
+	 * {@link HuffmanChannels#newChannel(java.nio.channels.WritableByteChannel, BlockCompressor)}.
+	 */
+	int write(ByteBuffer src) throws IOException {
+		ensureOpen();
+		int written = src.remaining();
+		while (src.hasRemaining()) {
+			if (size == 0 && src.hasArray() && src.remaining() >= block.length) {
+				writeBlock(src.array(), src.arrayOffset() + src.position(), block.length);
+				src.position(src.position() + block.length);
+				continue;
+			}
+			int n = Math.min(src.remaining(), block.length - size);
+			src.get(block, size, n);
+			size += n;
+			if (size == block.length)
+				writeBlock(block, 0, size);
+		}
+		return written;
+	}
+
+	/**
+	 * Codes the bytes written since the last block as a block of their own
+	 * and flushes the underlying stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (finished)
+			return;
+		if (size > 0)
+			writeBlock(block, 0, size);
+		out.flush();
+	}
+
+	/**
+	 * Codes the last block and writes the block index, leaving the
+	 * underlying stream open. Nothing can be written afterwards.
+	 */
+	public void finish() throws IOException {
+		if (finished)
+			return;
+		if (size > 0)
+			writeBlock(block, 0, size);
+		ByteArrayOutputStream index = new ByteArrayOutputStream(8 * offsets.size() + 32);
+		BlockCompressor.writeIndex(index, offsets, position);
+		index.writeTo(out);
+		out.flush();
+		finished = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeBlock(byte[] b, int off, int len) throws IOException {
+		bits.reset();
+		// room for the lengths, filled in once the payload is coded
+		bits.write(0, 32);
+		bits.write(0, 32);
+		compressor.encodeBlock(b, off, len, bits, scratch);
+		int payload = (int) ((bits.bitLength() + 7) >>> 3) - 8;
+		bits.setInt(0, len);
+		bits.setInt(4, payload);
+		offsets.add(position);
+		bits.writeTo(out);
+		position += 8 + payload;
+		size = 0;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (finished)
+			throw new IOException("Stream finished");
+	}
+}
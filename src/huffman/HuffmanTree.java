@@ -0,0 +1,212 @@
+package huffman;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+class HuffmanTree {
+	Node root;
+
+	public HuffmanTree() {
+		super();
+	}
+
+	public boolean isLeaf(Node p) {
+		return (p.left == null && p.right == null);
+	}
+
+	private static int symbol(Node leaf) {
+		if (leaf.symbol < 0)
+			throw new IllegalArgumentException("Leaf '" + leaf.info + "' is not a single symbol");
+		return leaf.symbol;
+	}
+
+	public String breadthFirst() {
+		StringBuilder sb = new StringBuilder();
+		Queue<Node> queue = new LinkedList<>();
+		Queue<Integer> level = new LinkedList<>();
+		if (root != null) {
+			queue.offer(root);
+			level.offer(1);
+		}
+		Node p;
+		Integer i, currentLevel = 1;
+		while (!queue.isEmpty()) {
+			p = queue.poll();
+			i = level.poll();
+			if (i > currentLevel) {
+				sb.append(System.lineSeparator());
+				currentLevel = i;
+			}
+			sb.append(p);
+			if (p.left != null) {
+				queue.add(p.left);
+				level.add(i + 1);
+			}
+			if (p.right != null) {
+				queue.add(p.right);
+				level.add(i + 1);
+			}
+		}
+		return sb + "";
+	}
+
+	/**
+	 * Returns a leaf for every symbol with a non-zero count, in increasing
+	 * order of the symbol. Symbols are bytes, chars or token numbers.
+	 */
+	static List<Node> leaves(long[] counts) {
+		List<Node> list = new ArrayList<>();
+		for (int symbol = 0; symbol < counts.length; symbol++) {
+			if (counts[symbol] != 0)
+				list.add(new Node(symbol, counts[symbol]));
+		}
+		return list;
+	}
+
+	static HuffmanTree of(long[] counts, boolean higherPercentInLeft) {
+		HuffmanTree tree = new HuffmanTree();
+		tree.build(leaves(counts), higherPercentInLeft);
+		return tree;
+	}
+
+	/*
+	 * Two-queue construction: leaves sorted by frequency in one queue, merged
+	 * nodes in another. Merged nodes come out in non-decreasing frequency, so
+	 * the two smallest nodes are always at the queue heads. The sort is
+	 * stable and leaves win ties, which picks the same nodes as scanning the
+	 * list for the first minimum.
+	 */
+	void build(List<Node> list, boolean higherPercentInLeft) {
+		List<Node> sorted = new ArrayList<>(list);
+		Collections.sort(sorted, new Comparator<Node>() {
+			@Override
+			public int compare(Node a, Node b) {
+				return Long.compare(a.frequency, b.frequency);
+			}
+		});
+		Queue<Node> leaves = new ArrayDeque<>(sorted);
+		Queue<Node> merged = new ArrayDeque<>();
+		while (leaves.size() + merged.size() > 1) {
+			Node firstNode = poll(leaves, merged);
+			Node secondNode = poll(leaves, merged);
+
+			Node newNode = new Node();
+			newNode.frequency = firstNode.frequency + secondNode.frequency;
+			if (higherPercentInLeft) {
+				newNode.left = secondNode;
+				newNode.right = firstNode;
+			} else {
+				newNode.left = firstNode;
+				newNode.right = secondNode;
+			}
+			merged.add(newNode);
+		}
+		root = merged.isEmpty() ? leaves.poll() : merged.poll();
+	}
+
+	private static Node poll(Queue<Node> leaves, Queue<Node> merged) {
+		if (merged.isEmpty() || (!leaves.isEmpty() && leaves.peek().frequency <= merged.peek().frequency))
+			return leaves.poll();
+		return merged.poll();
+	}
+
+	/**
+	 * Returns the depth of every leaf indexed by the leaf's symbol. A tree
+	 * that is a single leaf gets a 1 bit code so that it still produces
+	 * output.
+	 */
+	byte[] codeLengths() {
+		int size = 0;
+		Deque<Node> nodes = new ArrayDeque<>();
+		Deque<Integer> depths = new ArrayDeque<>();
+		if (root != null) {
+			nodes.push(root);
+			depths.push(isLeaf(root) ? 1 : 0);
+		}
+		byte[] lengths = new byte[0];
+		while (!nodes.isEmpty()) {
+			Node p = nodes.pop();
+			int depth = depths.pop();
+			if (isLeaf(p)) {
+				int c = symbol(p);
+				if (c >= size) {
+					size = Math.max(c + 1, size * 2);
+					byte[] grown = new byte[size];
+					System.arraycopy(lengths, 0, grown, 0, lengths.length);
+					lengths = grown;
+				}
+				lengths[c] = (byte) depth;
+				continue;
+			}
+			if (p.left != null) {
+				nodes.push(p.left);
+				depths.push(depth + 1);
+			}
+			if (p.right != null) {
+				nodes.push(p.right);
+				depths.push(depth + 1);
+			}
+		}
+		return lengths;
+	}
+
+	/**
+	 * Assigns the code of every leaf without recursion, walking the tree
+	 * with a stack of nodes and their codes so far. The left branch is 0
+	 * when {@code isOneOnRight}, 1 otherwise, and a tree that is a single
+	 * leaf gets the 1 bit code of a left branch.
+	 */
+	CodeTable codeTable(boolean isOneOnRight) {
+		int left = isOneOnRight ? 0 : 1;
+		// codes stop at MAX_LENGTH bits, so the stack never holds more nodes
+		Node[] nodes = new Node[CodeTable.MAX_LENGTH + 2];
+		int[] codes = new int[nodes.length];
+		int[] depths = new int[nodes.length];
+		int top = 0;
+		if (root != null) {
+			nodes[0] = root;
+			codes[0] = isLeaf(root) ? left : 0;
+			depths[0] = isLeaf(root) ? 1 : 0;
+			top = 1;
+		}
+		int[] tableCodes = new int[0];
+		byte[] tableLengths = new byte[0];
+		while (top > 0) {
+			top--;
+			Node p = nodes[top];
+			int code = codes[top], depth = depths[top];
+			nodes[top] = null;
+			if (isLeaf(p)) {
+				int c = symbol(p);
+				if (c >= tableLengths.length) {
+					int size = Math.max(c + 1, tableLengths.length * 2);
+					tableCodes = Arrays.copyOf(tableCodes, size);
+					tableLengths = Arrays.copyOf(tableLengths, size);
+				}
+				tableCodes[c] = code;
+				tableLengths[c] = (byte) depth;
+				continue;
+			}
+			if (depth == CodeTable.MAX_LENGTH)
+				throw new IllegalStateException("Codes are longer than " + CodeTable.MAX_LENGTH + " bits");
+			if (p.right != null) {
+				nodes[top] = p.right;
+				codes[top] = code << 1 | (left ^ 1);
+				depths[top++] = depth + 1;
+			}
+			if (p.left != null) {
+				nodes[top] = p.left;
+				codes[top] = code << 1 | left;
+				depths[top++] = depth + 1;
+			}
+		}
+		return new CodeTable(tableCodes, tableLengths);
+	}
+}
@@ -0,0 +1,157 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Inner loop that turns bytes into packed codes, in more than one form. All
+ * forms write the same bits. The one used is picked once per JVM: "vector"
+ * when the JVM runs with {@code --add-modules jdk.incubator.vector} and
+ * {@code VectorKernels}, built from the vector/ sources on Java 17 or later,
+ * loads; "scalar" otherwise. The system property "huffman.kernels" overrides
+ * the choice, so that the kernels can be compared on one machine.
+ *
+ * Every code goes through the accumulator of the {@link BitWriter}, so a
+ * plain loop is one long chain of dependent shifts. While no code is longer
+ * than {@link #PAIR_LENGTH} bits two codes fit in one 32-bit write: the
+ * pair is put together off the chain and the chain is half as long.
+ */
+abstract class Kernels {
+	static final int PAIR_LENGTH = 16;
+
+	static final Kernels SCALAR = new Kernels("scalar") {
+		@Override
+		void encode(CodeTable table, byte[] data, int off, int len, BitWriter out) {
+			scalar(table, data, off, len, out);
+		}
+
+		@Override
+		void encode(CodeTable table, ByteBuffer data, int off, int len, BitWriter out) {
+			scalar(table, data, off, len, out);
+		}
+	};
+
+	static final Kernels PAIRED = new Kernels("paired") {
+		@Override
+		void encode(CodeTable table, byte[] data, int off, int len, BitWriter out) {
+			if (table.maxLength > PAIR_LENGTH) {
+				scalar(table, data, off, len, out);
+				return;
+			}
+			int[] codes = table.codes;
+			byte[] lengths = table.lengths;
+			int i = off, end = off + len;
+			for (; i + 1 < end; i += 2) {
+				int a = data[i] & 0xFF, b = data[i + 1] & 0xFF;
+				int length = lengths[b];
+				out.write(codes[a] << length | codes[b], lengths[a] + length);
+			}
+			scalar(table, data, i, end - i, out);
+		}
+
+		@Override
+		void encode(CodeTable table, ByteBuffer data, int off, int len, BitWriter out) {
+			if (table.maxLength > PAIR_LENGTH) {
+				scalar(table, data, off, len, out);
+				return;
+			}
+			int[] codes = table.codes;
+			byte[] lengths = table.lengths;
+			int i = off, end = off + len;
+			for (; i + 1 < end; i += 2) {
+				int a = data.get(i) & 0xFF, b = data.get(i + 1) & 0xFF;
+				int length = lengths[b];
+				out.write(codes[a] << length | codes[b], lengths[a] + length);
+			}
+			scalar(table, data, i, end - i, out);
+		}
+	};
+
+	/* null when the Vector API or the compiled kernels are missing */
+	static final Kernels VECTOR = loadVector();
+
+	static final Kernels CURRENT = forName(System.getProperty("huffman.kernels", VECTOR != null ? "vector" : "scalar"));
+
+	private final String name;
+
+	Kernels(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the kernels called {@code name}.
+	 *
+	 * @throws IllegalArgumentException if there are none by that name or they
+	 *             cannot run on this JVM
+	 */
+	static Kernels forName(String name) {
+		if (name.equals(SCALAR.name))
+			return SCALAR;
+		if (name.equals(PAIRED.name))
+			return PAIRED;
+		if (name.equals("vector")) {
+			if (VECTOR == null)
+				throw new IllegalArgumentException("Vector kernels need Java 17 or later with --add-modules jdk.incubator.vector");
+			return VECTOR;
+		}
+		throw new IllegalArgumentException("Unknown kernels " + name);
+	}
+
+	/**
+	 * Loads {@code VectorKernels} and checks its bits against the scalar
+	 * kernel, so that a JVM whose Vector API differs from the one it was
+	 * compiled against falls back instead of failing later.
+	 */
+	private static Kernels loadVector() {
+		try {
+			Kernels kernels = (Kernels) Class.forName("huffman.VectorKernels").getDeclaredConstructor().newInstance();
+			byte[] wide = new byte[1027], narrow = new byte[1027];
+			for (int i = 0; i < wide.length; i++) {
+				wide[i] = (byte) (i * i >>> 3);
+				narrow[i] = (byte) (i % 5);
+			}
+			return matches(kernels, wide) && matches(kernels, narrow) ? kernels : null;
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+			return null;
+		}
+	}
+
+	private static boolean matches(Kernels kernels, byte[] sample) {
+		long[] counts = new long[256];
+		Histogram.count(sample, 0, sample.length, counts);
+		CodeTable table = new HuffmanCompressor().code(counts).table();
+		BitWriter expected = new BitWriter(), array = new BitWriter(), buffer = new BitWriter();
+		SCALAR.encode(table, sample, 0, sample.length, expected);
+		kernels.encode(table, sample, 0, sample.length, array);
+		kernels.encode(table, ByteBuffer.wrap(sample).asReadOnlyBuffer(), 0, sample.length, buffer);
+		return Arrays.equals(expected.toByteArray(), array.toByteArray())
+				&& Arrays.equals(expected.toByteArray(), buffer.toByteArray());
+	}
+
+	abstract void encode(CodeTable table, byte[] data, int off, int len, BitWriter out);
+
+	abstract void encode(CodeTable table, ByteBuffer data, int off, int len, BitWriter out);
+
+	static void scalar(CodeTable table, byte[] data, int off, int len, BitWriter out) {
+		int[] codes = table.codes;
+		byte[] lengths = table.lengths;
+		for (int i = off; i < off + len; i++) {
+			int b = data[i] & 0xFF;
+			out.write(codes[b], lengths[b]);
+		}
+	}
+
+	static void scalar(CodeTable table, ByteBuffer data, int off, int len, BitWriter out) {
+		int[] codes = table.codes;
+		byte[] lengths = table.lengths;
+		for (int i = off; i < off + len; i++) {
+			int b = data.get(i) & 0xFF;
+			out.write(codes[b], lengths[b]);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
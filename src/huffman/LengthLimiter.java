@@ -0,0 +1,105 @@
+package huffman;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Optimal code lengths under a maximum length, by package-merge: every level
+ * pairs the cheapest items of the level below into packages and merges them
+ * with the symbols again. The cheapest 2n - 2 items of the last level hold
+ * each symbol once per bit of its code.
+ */
+final class LengthLimiter {
+
+	private LengthLimiter() {
+	}
+
+	/**
+	 * Returns the code length of every symbol with a non-zero count, no
+	 * longer than {@code maxLength}.
+	 */
+	static byte[] limit(long[] counts, int maxLength) {
+		Integer[] order = new Integer[counts.length];
+		int n = 0;
+		for (int symbol = 0; symbol < counts.length; symbol++) {
+			if (counts[symbol] != 0)
+				order[n++] = symbol;
+		}
+		if (maxLength < 1 || maxLength > CodeTable.MAX_LENGTH || (maxLength < 31 && n > 1 << maxLength))
+			throw new IllegalArgumentException(n + " symbols do not fit in codes of " + maxLength + " bits");
+		byte[] lengths = new byte[counts.length];
+		if (n == 1)
+			lengths[order[0]] = 1;
+		if (n <= 1)
+			return lengths;
+		final long[] weights = counts;
+		Arrays.sort(order, 0, n, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(weights[a], weights[b]);
+			}
+		});
+
+		// items 0..n-1 are the symbols, later ones packages of two items
+		int capacity = n * maxLength;
+		long[] weight = new long[capacity];
+		int[] first = new int[capacity];
+		int[] second = new int[capacity];
+		for (int i = 0; i < n; i++)
+			weight[i] = counts[order[i]];
+		int items = n;
+		int[] level = new int[n];
+		for (int i = 0; i < n; i++)
+			level[i] = i;
+		int size = n;
+		for (int depth = 1; depth < maxLength; depth++) {
+			int packages = size / 2;
+			int[] next = new int[n + packages];
+			int leaf = 0, pack = 0, k = 0;
+			int firstPackage = items;
+			for (int p = 0; p < packages; p++) {
+				weight[items] = weight[level[2 * p]] + weight[level[2 * p + 1]];
+				first[items] = level[2 * p];
+				second[items] = level[2 * p + 1];
+				items++;
+			}
+			while (leaf < n || pack < packages) {
+				if (pack == packages || (leaf < n && weight[leaf] <= weight[firstPackage + pack]))
+					next[k++] = leaf++;
+				else
+					next[k++] = firstPackage + pack++;
+			}
+			level = next;
+			size = k;
+		}
+
+		int[] stack = new int[maxLength + 1];
+		for (int i = 0; i < 2 * n - 2; i++) {
+			int top = 0;
+			stack[top++] = level[i];
+			while (top > 0) {
+				int item = stack[--top];
+				if (item < n) {
+					lengths[order[item]]++;
+				} else {
+					stack[top++] = first[item];
+					stack[top++] = second[item];
+				}
+			}
+		}
+		return lengths;
+	}
+
+	/**
+	 * Returns how many more bits, as a fraction, {@code lengths} spends on
+	 * the counts than the unlimited lengths.
+	 */
+	static double cost(long[] counts, byte[] lengths, byte[] unlimited) {
+		long limited = 0, optimal = 0;
+		for (int symbol = 0; symbol < counts.length; symbol++) {
+			limited += counts[symbol] * lengths[symbol];
+			optimal += counts[symbol] * unlimited[symbol];
+		}
+		return optimal == 0 ? 0 : (limited - optimal) * 1.0 / optimal;
+	}
+}
@@ -0,0 +1,227 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Compresses arrays in memory with up to {@link #MAX_TABLES} codes, the way
+ * bzip2 does, for input whose byte frequencies shift from one part to the
+ * next. The input is cut into groups of {@link #GROUP_SIZE} bytes and every
+ * group is coded with the code that takes the fewest bits for it. The codes
+ * start from ranges of the byte frequencies and are rebuilt from the groups
+ * that chose them, {@link #ITERATIONS} times over.
+ *
+ * Format: the magic "HUFM", the number of bytes as a varint and the number
+ * of codes as a byte, then a bitmap of the byte values used, the length of
+ * every used byte in every code in 4 bits, the code of every group as its
+ * move-to-front rank in unary, and the packed codes.
+ */
+public final class MultiTableCompressor {
+	static final int MAGIC = 0x4855464D;
+	public static final int MAX_TABLES = 6;
+	static final int GROUP_SIZE = 50;
+	static final int ITERATIONS = 4;
+	static final int MAX_CODE_LENGTH = 16;
+	/* a group costs at most GROUP_SIZE * MAX_CODE_LENGTH bits */
+	private static final int COST_BITS = 10;
+	private static final long COST_MASK = (1 << COST_BITS) - 1;
+
+	private final HuffmanCompressor compressor = new HuffmanCompressor(true, true, MAX_CODE_LENGTH);
+	private final int maxTables;
+
+	public MultiTableCompressor() {
+		this(MAX_TABLES);
+	}
+
+	/**
+	 * Uses no more than {@code maxTables} codes, 1 to {@link #MAX_TABLES}.
+	 */
+	public MultiTableCompressor(int maxTables) {
+		if (maxTables < 1 || maxTables > MAX_TABLES)
+			throw new IllegalArgumentException("Number of tables must be between 1 and " + MAX_TABLES);
+		this.maxTables = maxTables;
+	}
+
+	/**
+	 * Returns how many codes pay for themselves on {@code length} bytes, by
+	 * the thresholds bzip2 uses.
+	 */
+	private int tables(int length) {
+		int tables = length < 200 ? 2 : length < 600 ? 3 : length < 1200 ? 4 : length < 2400 ? 5 : 6;
+		return Math.min(Math.min(tables, maxTables), (length + GROUP_SIZE - 1) / GROUP_SIZE);
+	}
+
+	public byte[] compress(byte[] data) {
+		long[] counts = new long[256];
+		Histogram.count(data, 0, data.length, counts);
+		int used = 0;
+		for (long count : counts)
+			if (count != 0)
+				used++;
+		int tables = used < 2 ? Math.min(data.length, 1) : tables(data.length);
+		int groups = (data.length + GROUP_SIZE - 1) / GROUP_SIZE;
+
+		byte[][] lengths = initialLengths(counts, data.length, tables);
+		byte[] selectors = new byte[groups];
+		long[] packed = new long[256];
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			// the lengths of a byte in all codes side by side, so one add per
+			// byte sums the cost of a group in every code at once
+			Arrays.fill(packed, 0);
+			for (int t = 0; t < tables; t++)
+				for (int b = 0; b < 256; b++)
+					packed[b] |= (long) lengths[t][b] << (COST_BITS * t);
+			long[][] tableCounts = new long[tables][256];
+			for (int group = 0; group < groups; group++) {
+				int off = group * GROUP_SIZE, end = Math.min(off + GROUP_SIZE, data.length);
+				long costs = 0;
+				for (int i = off; i < end; i++)
+					costs += packed[data[i] & 0xFF];
+				int best = 0;
+				for (int t = 1; t < tables; t++)
+					if ((costs >>> (COST_BITS * t) & COST_MASK) < (costs >>> (COST_BITS * best) & COST_MASK))
+						best = t;
+				selectors[group] = (byte) best;
+				long[] chosen = tableCounts[best];
+				for (int i = off; i < end; i++)
+					chosen[data[i] & 0xFF]++;
+			}
+			for (int t = 0; t < tables; t++) {
+				// every code keeps every used byte, so any group can choose it
+				for (int b = 0; b < 256; b++)
+					if (counts[b] != 0)
+						tableCounts[t][b]++;
+				lengths[t] = compressor.code(tableCounts[t]).lengths;
+			}
+		}
+
+		BitWriter bits = new BitWriter(data.length + 64);
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		try {
+			HuffmanCompressor.writeInt(header, MAGIC);
+			CanonicalCode.writeVarint(header, data.length);
+			header.write(tables);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		for (byte b : header.toByteArray())
+			bits.write(b & 0xFF, 8);
+		if (tables == 0)
+			return bits.toByteArray();
+		for (int b = 0; b < 256; b++)
+			bits.write(counts[b] != 0 ? 1 : 0, 1);
+		for (int t = 0; t < tables; t++)
+			for (int b = 0; b < 256; b++)
+				if (counts[b] != 0)
+					bits.write(lengths[t][b] - 1, 4);
+		byte[] order = { 0, 1, 2, 3, 4, 5 };
+		for (int group = 0; group < groups; group++) {
+			int rank = 0;
+			while (order[rank] != selectors[group])
+				rank++;
+			System.arraycopy(order, 0, order, 1, rank);
+			order[0] = selectors[group];
+			bits.write((1 << (rank + 1)) - 2, rank + 1);
+		}
+		CodeTable[] codes = new CodeTable[tables];
+		for (int t = 0; t < tables; t++)
+			codes[t] = new CanonicalCode(lengths[t], true, true).table();
+		for (int group = 0; group < groups; group++) {
+			int off = group * GROUP_SIZE;
+			codes[selectors[group]].encode(data, off, Math.min(GROUP_SIZE, data.length - off), bits);
+		}
+		return bits.toByteArray();
+	}
+
+	/**
+	 * Gives each code a range of bytes of about equal total frequency: short
+	 * codes inside the range and long ones outside, so that the first round
+	 * of selection already sorts the groups by content.
+	 */
+	private static byte[][] initialLengths(long[] counts, long length, int tables) {
+		byte[][] lengths = new byte[tables][256];
+		long remaining = length;
+		int b = 0;
+		for (int t = 0; t < tables; t++) {
+			long target = remaining / (tables - t), sum = 0;
+			int first = b;
+			while (b < 256 && (sum < target || b == first))
+				sum += counts[b++];
+			remaining -= sum;
+			for (int symbol = 0; symbol < 256; symbol++)
+				lengths[t][symbol] = (byte) (symbol >= first && symbol < b ? 1 : MAX_CODE_LENGTH);
+		}
+		return lengths;
+	}
+
+	/**
+	 * Decompresses the output of {@link #compress(byte[])}.
+	 *
+	 * @throws IllegalArgumentException if the input is not such output or is
+	 *             damaged
+	 */
+	public static byte[] decompress(byte[] compressed) {
+		try {
+			ByteArrayInputStream in = new ByteArrayInputStream(compressed);
+			if (HuffmanCompressor.readInt(in) != MAGIC)
+				throw new IOException("Not a multi-table compressed array");
+			int length = CanonicalCode.readVarint(in);
+			// every byte takes at least a bit, so a longer length is damage and must not size the output
+			if (length > 8L * in.available())
+				throw new IOException("Invalid length " + length);
+			int tables = CanonicalCode.readByte(in);
+			if (tables > MAX_TABLES || (tables == 0) != (length == 0))
+				throw new IOException("Invalid number of tables " + tables);
+			byte[] data = new byte[length];
+			if (length == 0)
+				return data;
+			int offset = compressed.length - in.available();
+			BitReader bits = new BitReader(compressed, offset, (compressed.length - offset) * 8L);
+			if (bits.remaining() < 256)
+				throw new IOException("Input ends inside the tables");
+			boolean[] used = new boolean[256];
+			for (int b = 0; b < 256; b++)
+				used[b] = bits.readBit() == 1;
+			TableDecoder[] decoders = new TableDecoder[tables];
+			for (int t = 0; t < tables; t++) {
+				byte[] lengths = new byte[256];
+				for (int b = 0; b < 256; b++) {
+					if (used[b]) {
+						if (bits.remaining() < 4)
+							throw new IOException("Input ends inside the tables");
+						lengths[b] = (byte) (bits.peek(4) + 1);
+						bits.skip(4);
+					}
+				}
+				decoders[t] = new TableDecoder(new CanonicalCode(lengths, true, true).table());
+			}
+			int groups = (length + GROUP_SIZE - 1) / GROUP_SIZE;
+			byte[] selectors = new byte[groups];
+			byte[] order = { 0, 1, 2, 3, 4, 5 };
+			for (int group = 0; group < groups; group++) {
+				int rank = 0;
+				while (bits.remaining() > 0 && bits.readBit() == 1)
+					if (++rank == tables)
+						throw new IOException("Invalid table selector");
+				byte selector = order[rank];
+				System.arraycopy(order, 0, order, 1, rank);
+				order[0] = selector;
+				selectors[group] = selector;
+			}
+			int[] symbols = new int[GROUP_SIZE];
+			for (int group = 0; group < groups; group++) {
+				int off = group * GROUP_SIZE, n = Math.min(GROUP_SIZE, length - off);
+				if (decoders[selectors[group]].decode(bits, symbols, 0, n) != n)
+					throw new IOException("Input ends " + (length - off) + " bytes early");
+				for (int i = 0; i < n; i++)
+					data[off + i] = (byte) symbols[i];
+			}
+			return data;
+		} catch (IOException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+}
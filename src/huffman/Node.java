@@ -0,0 +1,73 @@
+package huffman;
+
+class Node {
+	String info;
+	/* the byte, char or token of a leaf, -1 for merged nodes */
+	int symbol = -1;
+	long frequency;
+	Node left;
+	Node right;
+
+	public Node(String info, long frequency, Node left, Node right) {
+		super();
+		this.info = info;
+		this.frequency = frequency;
+		this.left = left;
+		this.right = right;
+	}
+
+	public Node(String info, long frequency) {
+		this(info, frequency, null, null);
+		if (info != null && info.length() == 1)
+			symbol = info.charAt(0);
+	}
+
+	Node(int symbol, long frequency) {
+		this.symbol = symbol;
+		this.frequency = frequency;
+	}
+
+	public Node() {
+		super();
+	}
+
+	public String getInfo() {
+		if (info == null && symbol >= 0 && symbol <= Character.MAX_VALUE)
+			info = (char) symbol + "";
+		return info;
+	}
+
+	public void setInfo(String info) {
+		this.info = info;
+	}
+
+	public Node getLeft() {
+		return left;
+	}
+
+	public void setLeft(Node left) {
+		this.left = left;
+	}
+
+	public Node getRight() {
+		return right;
+	}
+
+	public void setRight(Node right) {
+		this.right = right;
+	}
+
+	public long getFrequency() {
+		return frequency;
+	}
+
+	public void setFrequency(long frequency) {
+		this.frequency = frequency;
+	}
+
+	@Override
+	public String toString() {
+		return "Key : " + getInfo() + ", Frequency: " + frequency + " ";
+	}
+
+}
@@ -0,0 +1,184 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+
+/**
+ * Compresses arrays in memory over one of three alphabets: bytes, 16-bit
+ * units, or bytes plus the words that repeat in the input
+ * ({@link TokenAlphabet}), which suits logs and other text with a small
+ * vocabulary. Every alphabet is coded as int symbols with primitive count
+ * and code tables sized to the alphabet.
+ *
+ * Format: the magic "HUFS", the alphabet, the number of symbols and the
+ * number of bytes or units they stand for as varints, the words of a token
+ * alphabet, the {@link CanonicalCode} header, then the packed codes.
+ */
+public final class SymbolCompressor {
+	static final int MAGIC = 0x48554653;
+	static final int BYTES = 1;
+	static final int UNITS = 2;
+	static final int TOKENS = 3;
+
+	private final HuffmanCompressor compressor;
+
+	public SymbolCompressor() {
+		this(CodeTable.MAX_LENGTH);
+	}
+
+	/**
+	 * Limits the codes to {@code maxCodeLength} bits, which has to leave room
+	 * for every symbol the input uses.
+	 */
+	public SymbolCompressor(int maxCodeLength) {
+		this.compressor = new HuffmanCompressor(true, true, maxCodeLength);
+	}
+
+	public byte[] compress(byte[] data) {
+		long[] counts = new long[256];
+		Histogram.count(data, 0, data.length, counts);
+		CanonicalCode code = compressor.code(counts);
+		BitWriter bits = header(BYTES, data.length, data.length, null, code, data.length);
+		code.table().encode(data, 0, data.length, bits);
+		return bits.toByteArray();
+	}
+
+	public byte[] compress(char[] units) {
+		long[] counts = new long[Character.MAX_VALUE + 1];
+		for (char unit : units)
+			counts[unit]++;
+		CanonicalCode code = compressor.code(counts);
+		BitWriter bits = header(UNITS, units.length, units.length, null, code, 2 * units.length);
+		code.table().encode(CharBuffer.wrap(units), bits);
+		return bits.toByteArray();
+	}
+
+	/**
+	 * Compresses {@code data} over bytes plus the words that pay for their
+	 * place in the alphabet.
+	 */
+	public byte[] compressTokens(byte[] data) {
+		TokenAlphabet alphabet = TokenAlphabet.train(data);
+		int[] symbols = new int[data.length];
+		int n = alphabet.tokenize(data, symbols);
+		long[] counts = new long[alphabet.size()];
+		for (int i = 0; i < n; i++)
+			counts[symbols[i]]++;
+		CanonicalCode code = compressor.code(counts);
+		BitWriter bits = header(TOKENS, n, data.length, alphabet, code, data.length);
+		code.table().encode(symbols, 0, n, bits);
+		return bits.toByteArray();
+	}
+
+	private static BitWriter header(int kind, int symbols, int length, TokenAlphabet alphabet, CanonicalCode code,
+			int capacity) {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		try {
+			HuffmanCompressor.writeInt(header, MAGIC);
+			header.write(kind);
+			CanonicalCode.writeVarint(header, symbols);
+			CanonicalCode.writeVarint(header, length);
+			if (alphabet != null)
+				alphabet.write(header);
+			code.write(header);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		BitWriter bits = new BitWriter(header.size() + capacity);
+		for (byte b : header.toByteArray())
+			bits.write(b & 0xFF, 8);
+		return bits;
+	}
+
+	/**
+	 * Decompresses the output of {@link #compress(byte[])} or
+	 * {@link #compressTokens(byte[])}.
+	 *
+	 * @throws IllegalArgumentException if the input is not one of them or is
+	 *             damaged
+	 */
+	public static byte[] decompress(byte[] compressed) {
+		Decoded decoded = decode(compressed);
+		if (decoded.kind == UNITS)
+			throw new IllegalArgumentException("Input holds 16-bit units");
+		byte[] data = new byte[decoded.length];
+		if (decoded.kind == BYTES) {
+			for (int i = 0; i < data.length; i++)
+				data[i] = (byte) decoded.symbols[i];
+			return data;
+		}
+		int pos = 0;
+		for (int i = 0; i < decoded.symbols.length; i++)
+			pos = decoded.alphabet.expand(decoded.symbols[i], data, pos);
+		if (pos != data.length)
+			throw new IllegalArgumentException("Symbols expand to " + pos + " of " + data.length + " bytes");
+		return data;
+	}
+
+	/**
+	 * Decompresses the output of {@link #compress(char[])}.
+	 *
+	 * @throws IllegalArgumentException if the input is not such output or is
+	 *             damaged
+	 */
+	public static char[] decompressUnits(byte[] compressed) {
+		Decoded decoded = decode(compressed);
+		if (decoded.kind != UNITS)
+			throw new IllegalArgumentException("Input holds bytes");
+		char[] units = new char[decoded.length];
+		for (int i = 0; i < units.length; i++)
+			units[i] = (char) decoded.symbols[i];
+		return units;
+	}
+
+	private static final class Decoded {
+		int kind;
+		int length;
+		TokenAlphabet alphabet;
+		int[] symbols;
+	}
+
+	private static Decoded decode(byte[] compressed) {
+		try {
+			ByteArrayInputStream in = new ByteArrayInputStream(compressed);
+			if (HuffmanCompressor.readInt(in) != MAGIC)
+				throw new IOException("Not a symbol compressed array");
+			Decoded decoded = new Decoded();
+			decoded.kind = in.read();
+			if (decoded.kind < BYTES || decoded.kind > TOKENS)
+				throw new IOException("Unknown alphabet " + decoded.kind);
+			int n = CanonicalCode.readVarint(in);
+			decoded.length = CanonicalCode.readVarint(in);
+			if (decoded.kind != TOKENS ? n != decoded.length : n > decoded.length)
+				throw new IOException("Invalid symbol count");
+			int size = decoded.kind == BYTES ? 256 : Character.MAX_VALUE + 1;
+			if (decoded.kind == TOKENS) {
+				decoded.alphabet = TokenAlphabet.read(in);
+				size = decoded.alphabet.size();
+			}
+			CanonicalCode code = CanonicalCode.read(in);
+			if (code.lengths.length > size)
+				throw new IOException("Code length header is not for this alphabet");
+			int offset = compressed.length - in.available();
+			if (n > (compressed.length - offset) * 8L)
+				throw new EOFException("Input ends " + n + " symbols early");
+			BitReader bits = new BitReader(compressed, offset, (compressed.length - offset) * 8L);
+			TableDecoder decoder = new TableDecoder(code.table());
+			decoded.symbols = new int[n];
+			int done = 0;
+			while (done < n) {
+				int count = decoder.decode(bits, decoded.symbols, done, n - done);
+				if (count == 0)
+					throw new EOFException("Input ends " + (n - done) + " symbols early");
+				done += count;
+			}
+			return decoded;
+		} catch (IOException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+}
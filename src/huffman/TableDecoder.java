@@ -0,0 +1,375 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Decodes a prefix code with a lookup table indexed by the next
+ * {@link #LOOKUP_BITS} bits of input. One lookup yields every symbol whose
+ * code ends inside those bits (up to {@link #MAX_SYMBOLS}); codes longer than
+ * the table width continue bit by bit down the code trie from the node the
+ * table entry points at.
+ */
+final class TableDecoder {
+	static final int LOOKUP_BITS = 10;
+	static final int MAX_SYMBOLS = 3;
+	static final int STREAMS = 4;
+
+	private static final int BITS_MASK = 0x1F;
+	private static final int COUNT_SHIFT = 5;
+	private static final int COUNT_MASK = 0x3;
+	private static final int NODE_SHIFT = 8;
+
+	private final String[] symbols;
+	/* code length of every symbol when built from a CodeTable, else null */
+	private final byte[] lengths;
+	/*
+	 * Trie of the code: trie[2 * node + bit] is a child node index, the
+	 * complement of a symbol index for a leaf, or 0 when no code continues
+	 * with that bit.
+	 */
+	private int[] trie = new int[16];
+	private int nodes = 1;
+	/*
+	 * Per table entry: bits consumed, number of symbols and, when no symbol
+	 * completes inside the table width, the trie node reached. 0 marks a bit
+	 * pattern that no code starts with.
+	 */
+	private final int[] lookup;
+	private final int[] lookupSymbols;
+
+	/**
+	 * Builds a decoder for a "symbol -> code" table such as
+	 * {@link Huffman#result}.
+	 */
+	public TableDecoder(Map<String, String> codes) {
+		symbols = new String[codes.size()];
+		lengths = null;
+		int i = 0;
+		for (Map.Entry<String, String> entry : codes.entrySet()) {
+			symbols[i] = entry.getKey();
+			insert(i++, entry.getValue().trim());
+		}
+		lookup = new int[1 << LOOKUP_BITS];
+		lookupSymbols = new int[MAX_SYMBOLS << LOOKUP_BITS];
+		buildLookup();
+	}
+
+	/**
+	 * Builds a decoder whose symbol indices are the symbols of the table.
+	 */
+	public TableDecoder(CodeTable table) {
+		symbols = null;
+		lengths = table.lengths;
+		for (int symbol = 0; symbol < table.lengths.length; symbol++) {
+			if (table.lengths[symbol] != 0)
+				insert(symbol, CodeTable.toBits(table.codes[symbol], table.lengths[symbol]));
+		}
+		lookup = new int[1 << LOOKUP_BITS];
+		lookupSymbols = new int[MAX_SYMBOLS << LOOKUP_BITS];
+		buildLookup();
+	}
+
+	private void insert(int symbol, String code) {
+		if (code.isEmpty()) {
+			// a lone symbol with an empty code carries no bits to decode
+			if (symbols != null && symbols.length == 1)
+				return;
+			throw new IllegalArgumentException("Empty code for " + symbol(symbol));
+		}
+		int node = 0;
+		for (int i = 0; i < code.length(); i++) {
+			int slot = 2 * node + bit(code.charAt(i), symbol);
+			int next = trie[slot];
+			if (next < 0)
+				throw new IllegalArgumentException("Code of " + symbol(~next) + " is a prefix of " + symbol(symbol));
+			if (i == code.length() - 1) {
+				if (next != 0)
+					throw new IllegalArgumentException("Code of " + symbol(symbol) + " is a prefix of another code");
+				trie[slot] = ~symbol;
+			} else {
+				if (next == 0) {
+					next = nodes++;
+					if (2 * nodes > trie.length) {
+						int[] grown = new int[trie.length * 2];
+						System.arraycopy(trie, 0, grown, 0, trie.length);
+						trie = grown;
+					}
+					trie[slot] = next;
+				}
+				node = next;
+			}
+		}
+	}
+
+	private int bit(char c, int symbol) {
+		if (c == '0')
+			return 0;
+		if (c == '1')
+			return 1;
+		throw new IllegalArgumentException("Invalid code for " + symbol(symbol));
+	}
+
+	private String symbol(int symbol) {
+		return "'" + (symbols == null ? (char) symbol + "" : symbols[symbol]) + "'";
+	}
+
+	private void buildLookup() {
+		for (int pattern = 0; pattern < lookup.length; pattern++) {
+			int node = 0, count = 0, consumed = 0;
+			for (int i = 0; i < LOOKUP_BITS; i++) {
+				int next = trie[2 * node + ((pattern >>> (LOOKUP_BITS - 1 - i)) & 1)];
+				if (next == 0) {
+					node = 0;
+					break;
+				}
+				if (next < 0) {
+					lookupSymbols[pattern * MAX_SYMBOLS + count++] = ~next;
+					consumed = i + 1;
+					node = 0;
+					if (count == MAX_SYMBOLS)
+						break;
+				} else {
+					node = next;
+				}
+			}
+			if (count > 0)
+				lookup[pattern] = consumed | count << COUNT_SHIFT;
+			else if (node != 0)
+				lookup[pattern] = LOOKUP_BITS | node << NODE_SHIFT;
+		}
+	}
+
+	/**
+	 * Decodes up to {@code len} symbol indices into {@code out}. Returns the
+	 * number decoded, which is 0 once the input is used up, ends inside a
+	 * code, or reaches a bit pattern that is not in the code.
+	 */
+	public int decode(BitReader in, int[] out, int off, int len) {
+		int n = off, end = off + len;
+		while (end - n >= MAX_SYMBOLS && in.remaining() >= LOOKUP_BITS) {
+			int pattern = in.peek(LOOKUP_BITS);
+			int entry = lookup[pattern];
+			int count = (entry >>> COUNT_SHIFT) & COUNT_MASK;
+			if (count != 0) {
+				int base = pattern * MAX_SYMBOLS;
+				out[n] = lookupSymbols[base];
+				out[n + 1] = lookupSymbols[base + 1];
+				out[n + 2] = lookupSymbols[base + 2];
+				n += count;
+				in.skip(entry & BITS_MASK);
+			} else if (entry == 0) {
+				in.skipRemaining();
+				return n - off;
+			} else {
+				in.skip(LOOKUP_BITS);
+				int symbol = walk(in, entry >>> NODE_SHIFT);
+				if (symbol < 0)
+					return n - off;
+				out[n++] = symbol;
+			}
+		}
+		while (n < end && in.remaining() > 0) {
+			int symbol = walk(in, 0);
+			if (symbol < 0)
+				break;
+			out[n++] = symbol;
+		}
+		return n - off;
+	}
+
+	/**
+	 * Decodes one symbol, for callers that pick the decoder of every symbol
+	 * from the symbols before it. Returns -1 once the input is used up, ends
+	 * inside a code, or reaches a bit pattern that is not in the code.
+	 */
+	public int decodeSymbol(BitReader in) {
+		if (lengths == null || in.remaining() < LOOKUP_BITS)
+			return walk(in, 0);
+		int pattern = in.peek(LOOKUP_BITS);
+		int entry = lookup[pattern];
+		if (((entry >>> COUNT_SHIFT) & COUNT_MASK) != 0) {
+			int symbol = lookupSymbols[pattern * MAX_SYMBOLS];
+			in.skip(lengths[symbol]);
+			return symbol;
+		}
+		if (entry == 0) {
+			in.skipRemaining();
+			return -1;
+		}
+		in.skip(LOOKUP_BITS);
+		return walk(in, entry >>> NODE_SHIFT);
+	}
+
+	/**
+	 * Follows the trie from {@code node} one bit at a time. Returns the symbol
+	 * reached, or -1 after consuming the rest of the input when it runs out
+	 * or leaves the code.
+	 */
+	private int walk(BitReader in, int node) {
+		while (in.remaining() > 0) {
+			int next = trie[2 * node + in.readBit()];
+			if (next < 0)
+				return ~next;
+			if (next == 0)
+				break;
+			node = next;
+		}
+		in.skipRemaining();
+		return -1;
+	}
+
+	/**
+	 * Decodes {@code len} bytes into {@code out} from {@link #STREAMS}
+	 * streams, stream s holding the s-th quarter of them (see
+	 * {@link #quarter(int)}) in {@code in[starts[s], starts[s + 1])}. The
+	 * streams do not depend on each other, so one loop advances all four
+	 * and their lookups overlap in the CPU; each stream finishes on its own
+	 * once the others run out. Returns false if a stream is damaged.
+	 */
+	boolean decodeInterleaved(byte[] in, int[] starts, byte[] out, int off, int len) {
+		ByteBuffer words = ByteBuffer.wrap(in);
+		int quarter = quarter(len);
+		int o0 = off, o1 = off + Math.min(quarter, len), o2 = off + Math.min(2 * quarter, len),
+				o3 = off + Math.min(3 * quarter, len), end = off + len;
+		long b0 = 8L * starts[0], b1 = 8L * starts[1], b2 = 8L * starts[2], b3 = 8L * starts[3];
+		// the fast loop reads 8 bytes at a time and may write MAX_SYMBOLS
+		// symbols, so it stops short of the end of every stream
+		long l0 = 8L * (starts[1] - 8), l1 = 8L * (starts[2] - 8), l2 = 8L * (starts[3] - 8),
+				l3 = 8L * (starts[4] - 8);
+		int m0 = o1 - MAX_SYMBOLS, m1 = o2 - MAX_SYMBOLS, m2 = o3 - MAX_SYMBOLS, m3 = end - MAX_SYMBOLS;
+		int[] lookup = this.lookup, lookupSymbols = this.lookupSymbols;
+		while (b0 <= l0 && b1 <= l1 && b2 <= l2 && b3 <= l3 && o0 <= m0 && o1 <= m1 && o2 <= m2 && o3 <= m3) {
+			long w0 = words.getLong((int) (b0 >>> 3)) << (b0 & 7);
+			long w1 = words.getLong((int) (b1 >>> 3)) << (b1 & 7);
+			long w2 = words.getLong((int) (b2 >>> 3)) << (b2 & 7);
+			long w3 = words.getLong((int) (b3 >>> 3)) << (b3 & 7);
+			int p0 = (int) (w0 >>> (64 - LOOKUP_BITS)), p1 = (int) (w1 >>> (64 - LOOKUP_BITS)),
+					p2 = (int) (w2 >>> (64 - LOOKUP_BITS)), p3 = (int) (w3 >>> (64 - LOOKUP_BITS));
+			int e0 = lookup[p0], e1 = lookup[p1], e2 = lookup[p2], e3 = lookup[p3];
+			int c0 = (e0 >>> COUNT_SHIFT) & COUNT_MASK, c1 = (e1 >>> COUNT_SHIFT) & COUNT_MASK,
+					c2 = (e2 >>> COUNT_SHIFT) & COUNT_MASK, c3 = (e3 >>> COUNT_SHIFT) & COUNT_MASK;
+			if (e0 == 0 || e1 == 0 || e2 == 0 || e3 == 0)
+				return false;
+			if (c0 != 0) {
+				out[o0] = (byte) lookupSymbols[p0 * MAX_SYMBOLS];
+				out[o0 + 1] = (byte) lookupSymbols[p0 * MAX_SYMBOLS + 1];
+				out[o0 + 2] = (byte) lookupSymbols[p0 * MAX_SYMBOLS + 2];
+				o0 += c0;
+				b0 += e0 & BITS_MASK;
+			} else if ((b0 = walk(in, b0 + LOOKUP_BITS, 8L * starts[1], e0 >>> NODE_SHIFT, out, o0++)) < 0) {
+				return false;
+			}
+			if (c1 != 0) {
+				out[o1] = (byte) lookupSymbols[p1 * MAX_SYMBOLS];
+				out[o1 + 1] = (byte) lookupSymbols[p1 * MAX_SYMBOLS + 1];
+				out[o1 + 2] = (byte) lookupSymbols[p1 * MAX_SYMBOLS + 2];
+				o1 += c1;
+				b1 += e1 & BITS_MASK;
+			} else if ((b1 = walk(in, b1 + LOOKUP_BITS, 8L * starts[2], e1 >>> NODE_SHIFT, out, o1++)) < 0) {
+				return false;
+			}
+			if (c2 != 0) {
+				out[o2] = (byte) lookupSymbols[p2 * MAX_SYMBOLS];
+				out[o2 + 1] = (byte) lookupSymbols[p2 * MAX_SYMBOLS + 1];
+				out[o2 + 2] = (byte) lookupSymbols[p2 * MAX_SYMBOLS + 2];
+				o2 += c2;
+				b2 += e2 & BITS_MASK;
+			} else if ((b2 = walk(in, b2 + LOOKUP_BITS, 8L * starts[3], e2 >>> NODE_SHIFT, out, o2++)) < 0) {
+				return false;
+			}
+			if (c3 != 0) {
+				out[o3] = (byte) lookupSymbols[p3 * MAX_SYMBOLS];
+				out[o3 + 1] = (byte) lookupSymbols[p3 * MAX_SYMBOLS + 1];
+				out[o3 + 2] = (byte) lookupSymbols[p3 * MAX_SYMBOLS + 2];
+				o3 += c3;
+				b3 += e3 & BITS_MASK;
+			} else if ((b3 = walk(in, b3 + LOOKUP_BITS, 8L * starts[4], e3 >>> NODE_SHIFT, out, o3++)) < 0) {
+				return false;
+			}
+		}
+		return finish(in, b0, 8L * starts[1], out, o0, off + Math.min(quarter, len))
+				&& finish(in, b1, 8L * starts[2], out, o1, off + Math.min(2 * quarter, len))
+				&& finish(in, b2, 8L * starts[3], out, o2, off + Math.min(3 * quarter, len))
+				&& finish(in, b3, 8L * starts[4], out, o3, end);
+	}
+
+	/**
+	 * Returns the number of bytes in each of the first three streams of
+	 * {@link #decodeInterleaved}; the last one holds the rest.
+	 */
+	static int quarter(int len) {
+		return (len + STREAMS - 1) / STREAMS;
+	}
+
+	/**
+	 * Follows the trie from {@code node} through the bits of {@code in}
+	 * before {@code end} and stores the symbol reached in {@code out[o]}.
+	 * Returns the bit after its code, or -1 if the stream ends or leaves the
+	 * code first.
+	 */
+	private long walk(byte[] in, long bit, long end, int node, byte[] out, int o) {
+		for (; bit < end; bit++) {
+			int next = trie[2 * node + ((in[(int) (bit >>> 3)] >>> (7 - (bit & 7))) & 1)];
+			if (next < 0) {
+				out[o] = (byte) ~next;
+				return bit + 1;
+			}
+			if (next == 0)
+				break;
+			node = next;
+		}
+		return -1;
+	}
+
+	/**
+	 * Decodes the rest of one stream of {@link #decodeInterleaved} from bit
+	 * {@code bit} up to bit {@code end}, filling {@code out[o, limit)}.
+	 */
+	private boolean finish(byte[] in, long bit, long end, byte[] out, int o, int limit) {
+		if (o == limit)
+			return true;
+		BitReader bits = new BitReader(in, (int) (bit >>> 3), end - (bit & ~7L));
+		bits.skip((int) (bit & 7));
+		int[] symbols = new int[Math.min(limit - o, HuffmanCompressor.BUFFER_SIZE)];
+		while (o < limit) {
+			int n = decode(bits, symbols, 0, Math.min(limit - o, symbols.length));
+			if (n == 0)
+				return false;
+			for (int i = 0; i < n; i++)
+				out[o + i] = (byte) symbols[i];
+			o += n;
+		}
+		return true;
+	}
+
+	public String decode(CharSequence bits) {
+		return decode(BitReader.of(bits));
+	}
+
+	public String decode(BitReader in) {
+		StringBuilder sb = new StringBuilder();
+		decode(in, sb, Integer.MAX_VALUE);
+		return sb + "";
+	}
+
+	/**
+	 * Appends up to {@code len} symbols to {@code out}, so that a long input
+	 * can be decoded a piece at a time. Returns the number appended, 0 once
+	 * the input is used up.
+	 */
+	public int decode(BitReader in, StringBuilder out, int len) {
+		int[] buffer = new int[Math.min(len, 256)];
+		int done = 0, n;
+		while (done < len && (n = decode(in, buffer, 0, Math.min(len - done, buffer.length))) > 0) {
+			for (int i = 0; i < n; i++) {
+				if (symbols == null)
+					out.append((char) buffer[i]);
+				else
+					out.append(symbols[buffer[i]]);
+			}
+			done += n;
+		}
+		return done;
+	}
+}
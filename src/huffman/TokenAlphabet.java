@@ -0,0 +1,245 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Alphabet of the 256 byte values plus the words that repeat often enough in
+ * the input to be worth a symbol of their own. A word is a run of at least two
+ * ASCII letters, digits or underscores; other bytes, and words that are not
+ * in the alphabet, stay single byte symbols.
+ *
+ * The words are kept back to back in one byte array and found through an
+ * open addressing table of word numbers, so tokenizing allocates nothing per
+ * word.
+ */
+final class TokenAlphabet {
+	static final int MAX_SYMBOLS = Character.MAX_VALUE + 1;
+	static final int FIRST_TOKEN = 256;
+	static final int MAX_TOKEN_LENGTH = 255;
+
+	private static final boolean[] WORD = new boolean[256];
+
+	static {
+		for (int c = 0; c < 256; c++)
+			WORD[c] = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+	}
+
+	private final byte[] bytes;
+	private final int[] offsets;
+	private final int tokens;
+	/* word number + 1 of every slot, 0 when the slot is free */
+	private final int[] slots;
+
+	private TokenAlphabet(byte[] bytes, int[] offsets, int tokens) {
+		this.bytes = bytes;
+		this.offsets = offsets;
+		this.tokens = tokens;
+		this.slots = new int[Integer.highestOneBit(Math.max(tokens, 1) * 2) * 2];
+		for (int i = 0; i < tokens; i++)
+			insert(slots, bytes, offsets[i], offsets[i + 1] - offsets[i], i);
+	}
+
+	/**
+	 * Picks the words of {@code data} that save more bits as one symbol than
+	 * their entry in the alphabet costs.
+	 */
+	static TokenAlphabet train(byte[] data) {
+		int[] slots = new int[1 << 12];
+		int[] start = new int[1 << 10];
+		int[] length = new int[start.length];
+		long[] count = new long[start.length];
+		int words = 0;
+		for (int i = 0; i < data.length;) {
+			int end = wordEnd(data, i);
+			if (end - i < 2 || end - i > MAX_TOKEN_LENGTH) {
+				i = Math.max(end, i + 1);
+				continue;
+			}
+			int word = find(slots, data, i, end - i, data, start, length);
+			if (word < 0) {
+				if (words == start.length) {
+					start = Arrays.copyOf(start, words * 2);
+					length = Arrays.copyOf(length, words * 2);
+					count = Arrays.copyOf(count, words * 2);
+				}
+				if (2 * (words + 1) > slots.length)
+					slots = rehash(data, start, length, words, slots.length * 2);
+				start[words] = i;
+				length[words] = end - i;
+				insert(slots, data, i, end - i, words);
+				word = words++;
+			}
+			count[word]++;
+			i = end;
+		}
+
+		// a word saves length - 1 symbols per use and costs its bytes once
+		Integer[] order = new Integer[words];
+		int kept = 0;
+		for (int word = 0; word < words; word++) {
+			if ((count[word] - 1) * (length[word] - 1) > length[word] + 1)
+				order[kept++] = word;
+		}
+		final long[] counts = count;
+		final int[] lengths = length;
+		Arrays.sort(order, 0, kept, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(counts[b] * lengths[b], counts[a] * lengths[a]);
+			}
+		});
+		kept = Math.min(kept, MAX_SYMBOLS - FIRST_TOKEN);
+		int[] offsets = new int[kept + 1];
+		for (int i = 0; i < kept; i++)
+			offsets[i + 1] = offsets[i] + length[order[i]];
+		byte[] bytes = new byte[offsets[kept]];
+		for (int i = 0; i < kept; i++)
+			System.arraycopy(data, start[order[i]], bytes, offsets[i], length[order[i]]);
+		return new TokenAlphabet(bytes, offsets, kept);
+	}
+
+	/**
+	 * Returns the number of symbols, bytes included.
+	 */
+	int size() {
+		return FIRST_TOKEN + tokens;
+	}
+
+	/**
+	 * Replaces the words of {@code data} that are in the alphabet by their
+	 * symbols. Returns the number of symbols written to {@code symbols},
+	 * which needs room for {@code data.length}.
+	 */
+	int tokenize(byte[] data, int[] symbols) {
+		int n = 0;
+		for (int i = 0; i < data.length;) {
+			int end = wordEnd(data, i);
+			if (end - i >= 2 && end - i <= MAX_TOKEN_LENGTH) {
+				int token = find(slots, data, i, end - i, bytes, offsets);
+				if (token >= 0) {
+					symbols[n++] = FIRST_TOKEN + token;
+					i = end;
+					continue;
+				}
+			}
+			for (end = Math.max(end, i + 1); i < end; i++)
+				symbols[n++] = data[i] & 0xFF;
+		}
+		return n;
+	}
+
+	/**
+	 * Writes the bytes of {@code symbol} at {@code out[pos]} and returns the
+	 * position after them.
+	 *
+	 * @throws IllegalArgumentException if they do not fit
+	 */
+	int expand(int symbol, byte[] out, int pos) {
+		if (symbol < FIRST_TOKEN) {
+			if (pos == out.length)
+				throw new IllegalArgumentException("Symbols expand past the original length");
+			out[pos] = (byte) symbol;
+			return pos + 1;
+		}
+		int token = symbol - FIRST_TOKEN;
+		int length = offsets[token + 1] - offsets[token];
+		if (length > out.length - pos)
+			throw new IllegalArgumentException("Symbols expand past the original length");
+		System.arraycopy(bytes, offsets[token], out, pos, length);
+		return pos + length;
+	}
+
+	/**
+	 * Writes the number of words, then every word as its length and bytes.
+	 */
+	void write(OutputStream out) throws IOException {
+		CanonicalCode.writeVarint(out, tokens);
+		for (int i = 0; i < tokens; i++) {
+			out.write(offsets[i + 1] - offsets[i]);
+			out.write(bytes, offsets[i], offsets[i + 1] - offsets[i]);
+		}
+	}
+
+	static TokenAlphabet read(InputStream in) throws IOException {
+		int tokens = CanonicalCode.readVarint(in);
+		if (tokens > MAX_SYMBOLS - FIRST_TOKEN)
+			throw new IOException("Too many tokens");
+		int[] offsets = new int[tokens + 1];
+		byte[] bytes = new byte[Math.min(tokens, 1 << 16) * 8];
+		for (int i = 0; i < tokens; i++) {
+			int length = CanonicalCode.readByte(in);
+			if (length < 2)
+				throw new IOException("Invalid token length");
+			if (offsets[i] + length > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, offsets[i] + length));
+			for (int j = 0; j < length; j++)
+				bytes[offsets[i] + j] = (byte) CanonicalCode.readByte(in);
+			offsets[i + 1] = offsets[i] + length;
+		}
+		return new TokenAlphabet(Arrays.copyOf(bytes, offsets[tokens]), offsets, tokens);
+	}
+
+	private static int wordEnd(byte[] data, int i) {
+		while (i < data.length && WORD[data[i] & 0xFF])
+			i++;
+		return i;
+	}
+
+	private static int hash(byte[] data, int off, int len) {
+		int h = 0x811C9DC5;
+		for (int i = off; i < off + len; i++)
+			h = (h ^ (data[i] & 0xFF)) * 0x01000193;
+		return h ^ h >>> 16;
+	}
+
+	private static void insert(int[] slots, byte[] data, int off, int len, int word) {
+		int mask = slots.length - 1;
+		int slot = hash(data, off, len) & mask;
+		while (slots[slot] != 0)
+			slot = (slot + 1) & mask;
+		slots[slot] = word + 1;
+	}
+
+	/*
+	 * Finds the word data[off, off + len) among words stored as
+	 * words[start[w], start[w] + length[w]).
+	 */
+	private static int find(int[] slots, byte[] data, int off, int len, byte[] words, int[] start, int[] length) {
+		int mask = slots.length - 1;
+		for (int slot = hash(data, off, len) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int word = slots[slot] - 1;
+			if (length[word] == len && equal(data, off, words, start[word], len))
+				return word;
+		}
+		return -1;
+	}
+
+	private static int find(int[] slots, byte[] data, int off, int len, byte[] words, int[] offsets) {
+		int mask = slots.length - 1;
+		for (int slot = hash(data, off, len) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int word = slots[slot] - 1;
+			if (offsets[word + 1] - offsets[word] == len && equal(data, off, words, offsets[word], len))
+				return word;
+		}
+		return -1;
+	}
+
+	private static boolean equal(byte[] a, int aOff, byte[] b, int bOff, int len) {
+		for (int i = 0; i < len; i++) {
+			if (a[aOff + i] != b[bOff + i])
+				return false;
+		}
+		return true;
+	}
+
+	private static int[] rehash(byte[] data, int[] start, int[] length, int words, int size) {
+		int[] grown = new int[size];
+		for (int word = 0; word < words; word++)
+			insert(grown, data, start[word], length[word], word);
+		return grown;
+	}
+}
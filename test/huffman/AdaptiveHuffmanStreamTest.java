@@ -0,0 +1,76 @@
+package huffman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class AdaptiveHuffmanStreamTest {
+
+	private static byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (AdaptiveHuffmanOutputStream adaptive = new AdaptiveHuffmanOutputStream(out)) {
+			adaptive.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[777];
+		int n;
+		while ((n = in.read(buffer)) >= 0)
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void roundTrips() throws IOException {
+		for (int size : new int[] { 0, 1, 300, 100000 }) {
+			byte[] data = Samples.text(size, size);
+			assertArrayEquals(data, readAll(new AdaptiveHuffmanInputStream(new ByteArrayInputStream(compress(data)))));
+		}
+	}
+
+	@Test
+	public void roundTripsEveryByte() throws IOException {
+		byte[] data = new byte[3 * 256];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i * 7);
+		assertArrayEquals(data, readAll(new AdaptiveHuffmanInputStream(new ByteArrayInputStream(compress(data)))));
+	}
+
+	@Test
+	public void flushedBytesDecodeBeforeMoreArrive() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AdaptiveHuffmanOutputStream adaptive = new AdaptiveHuffmanOutputStream(out);
+		adaptive.write("first part".getBytes("US-ASCII"));
+		adaptive.flush();
+		// only what was flushed is there to read; a read past it would throw
+		AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(new ByteArrayInputStream(out.toByteArray()));
+		byte[] b = new byte[100];
+		assertEquals("first part", new String(b, 0, in.read(b), "US-ASCII"));
+		adaptive.write(", second part".getBytes("US-ASCII"));
+		adaptive.close();
+		in = new AdaptiveHuffmanInputStream(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals("first part, second part", new String(readAll(in), "US-ASCII"));
+	}
+
+	@Test(expected = EOFException.class)
+	public void rejectsTruncatedStream() throws IOException {
+		byte[] compressed = compress(Samples.text(1000, 1));
+		readAll(new AdaptiveHuffmanInputStream(new ByteArrayInputStream(Arrays.copyOf(compressed, 100))));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFormat() throws IOException {
+		readAll(new AdaptiveHuffmanInputStream(new ByteArrayInputStream(Samples.text(100, 2))));
+	}
+}
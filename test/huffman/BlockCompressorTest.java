@@ -0,0 +1,217 @@
+package huffman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class BlockCompressorTest {
+	static final int BLOCK_SIZE = 1000;
+	/* several workers even on one CPU, so that blocks finish out of order */
+	private static final ForkJoinPool POOL = new ForkJoinPool(3);
+
+	static BlockCompressor compressor() {
+		return new BlockCompressor(BLOCK_SIZE, POOL);
+	}
+
+	static byte[] compress(BlockCompressor compressor, byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		compressor.compress(new ByteArrayInputStream(data), out);
+		return out.toByteArray();
+	}
+
+	static byte[] decompress(BlockCompressor compressor, byte[] compressed) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		compressor.decompress(new ByteArrayInputStream(compressed), out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes through the block index of a file.
+	 */
+	static byte[] decompressFile(BlockCompressor compressor, byte[] compressed) throws IOException {
+		Path input = Files.createTempFile("huffman", ".huf");
+		Path output = Files.createTempFile("huffman", ".out");
+		try {
+			Files.write(input, compressed);
+			compressor.decompress(input, output);
+			return Files.readAllBytes(output);
+		} finally {
+			Files.delete(input);
+			Files.delete(output);
+		}
+	}
+
+	@Test
+	public void roundTripsManyBlocks() throws IOException {
+		BlockCompressor compressor = compressor();
+		for (int size : new int[] { 0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 5 * BLOCK_SIZE, 23456 }) {
+			byte[] data = Samples.text(size, size);
+			byte[] compressed = compress(compressor, data);
+			assertArrayEquals(data, decompress(compressor, compressed));
+			assertArrayEquals(data, decompressFile(compressor, compressed));
+		}
+	}
+
+	@Test
+	public void roundTripsSingleByteBlocks() throws IOException {
+		BlockCompressor compressor = compressor();
+		byte[] data = new byte[3 * BLOCK_SIZE + 7];
+		byte[] compressed = compress(compressor, data);
+		assertArrayEquals(data, decompress(compressor, compressed));
+		assertArrayEquals(data, decompressFile(compressor, compressed));
+	}
+
+	@Test
+	public void decodesWithOtherBlockSize() throws IOException {
+		// the block size comes from the header, not from the decoder's settings
+		byte[] data = Samples.text(12345, 1);
+		byte[] compressed = compress(compressor(), data);
+		assertArrayEquals(data, decompress(new BlockCompressor(), compressed));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFormat() throws IOException {
+		decompress(compressor(), Samples.text(100, 2));
+	}
+
+	/**
+	 * Returns the offset of block {@code block}, found by walking the
+	 * lengths from the header of a checked file.
+	 */
+	private static int offset(byte[] compressed, int block) {
+		ByteBuffer buffer = ByteBuffer.wrap(compressed);
+		int position = BlockCompressor.CHECKED_HEADER_SIZE;
+		for (int i = 0; i < block; i++)
+			position += 8 + buffer.getInt(position + 4);
+		return position;
+	}
+
+	/**
+	 * Returns a copy of a checked file whose block {@code block} fails its
+	 * checksum.
+	 */
+	private static byte[] damage(byte[] compressed, int block) {
+		byte[] damaged = compressed.clone();
+		damaged[offset(compressed, block) + 8] ^= 1;
+		return damaged;
+	}
+
+	@Test
+	public void roundTripsEveryLayout() throws IOException {
+		byte[] data = Samples.text(4567, 3);
+		for (boolean checked : new boolean[] { false, true }) {
+			for (boolean interleaved : new boolean[] { false, true }) {
+				BlockCompressor compressor = compressor();
+				compressor.setChecked(checked);
+				compressor.setInterleaved(interleaved);
+				byte[] compressed = compress(compressor, data);
+				assertArrayEquals(data, decompress(compressor(), compressed));
+				assertArrayEquals(data, decompressFile(compressor(), compressed));
+			}
+		}
+	}
+
+	@Test(expected = CorruptBlockException.class)
+	public void streamFailsOnDamagedBlock() throws IOException {
+		decompress(compressor(), damage(compress(compressor(), Samples.text(4567, 4)), 2));
+	}
+
+	@Test(expected = CorruptBlockException.class)
+	public void fileFailsOnDamagedBlock() throws IOException {
+		decompressFile(compressor(), damage(compress(compressor(), Samples.text(4567, 4)), 2));
+	}
+
+	@Test
+	public void handlerSkipsDamagedBlock() throws IOException {
+		byte[] data = Samples.text(4567, 5);
+		byte[] damaged = damage(compress(compressor(), data), 2);
+		List<CorruptBlockException> corrupt = new ArrayList<>();
+		BlockCompressor compressor = compressor();
+		compressor.setCorruptBlockHandler(corrupt::add);
+
+		byte[] decoded = decompress(compressor, damaged);
+		assertEquals(1, corrupt.size());
+		assertEquals(2, corrupt.get(0).getBlock());
+		assertEquals(offset(damaged, 2), corrupt.get(0).getOffset());
+		byte[] expected = new byte[data.length - BLOCK_SIZE];
+		System.arraycopy(data, 0, expected, 0, 2 * BLOCK_SIZE);
+		System.arraycopy(data, 3 * BLOCK_SIZE, expected, 2 * BLOCK_SIZE, data.length - 3 * BLOCK_SIZE);
+		assertArrayEquals(expected, decoded);
+
+		// the file decoder leaves the block's range unwritten
+		decoded = decompressFile(compressor, damaged);
+		assertEquals(2, corrupt.size());
+		assertArrayEquals(Arrays.copyOfRange(data, 0, 2 * BLOCK_SIZE), Arrays.copyOfRange(decoded, 0, 2 * BLOCK_SIZE));
+		assertArrayEquals(Arrays.copyOfRange(data, 3 * BLOCK_SIZE, data.length),
+				Arrays.copyOfRange(decoded, 3 * BLOCK_SIZE, data.length));
+	}
+
+	@Test
+	public void fileStopsAtDamagedLength() throws IOException {
+		byte[] damaged = compress(compressor(), Samples.text(4567, 6));
+		ByteBuffer.wrap(damaged).putInt(offset(damaged, 1), BLOCK_SIZE + 1);
+		List<CorruptBlockException> corrupt = new ArrayList<>();
+		BlockCompressor compressor = compressor();
+		compressor.setCorruptBlockHandler(corrupt::add);
+		decompressFile(compressor, damaged);
+		// blocks 1 to 4 cannot be placed
+		assertEquals(4, corrupt.size());
+		for (int i = 0; i < corrupt.size(); i++)
+			assertEquals(i + 1, corrupt.get(i).getBlock());
+	}
+
+	@Test(expected = IOException.class)
+	public void fileFailsOnTruncatedIndex() throws IOException {
+		byte[] compressed = compress(compressor(), Samples.text(4567, 7));
+		decompressFile(compressor(), Arrays.copyOf(compressed, compressed.length - 4));
+	}
+
+	@Test(expected = IOException.class)
+	public void fileFailsOnCraftedBlockCount() throws IOException {
+		byte[] compressed = compress(compressor(), Samples.text(4567, 8));
+		int index = (int) ByteBuffer.wrap(compressed).getLong(compressed.length - BlockCompressor.FOOTER_SIZE);
+		ByteBuffer.wrap(compressed).putInt(index + 4, Integer.MAX_VALUE);
+		decompressFile(compressor(), compressed);
+	}
+
+	@Test
+	public void craftedLengthsAreCorruptBlocks() throws IOException {
+		byte[] compressed = compress(compressor(), Samples.text(4567, 9));
+		// the original length and then the compressed length of block 1
+		for (int field = 0; field < 8; field += 4) {
+			for (int length : new int[] { -1, Integer.MAX_VALUE }) {
+				byte[] crafted = compressed.clone();
+				ByteBuffer.wrap(crafted).putInt(offset(compressed, 1) + field, length);
+				try {
+					decompress(compressor(), crafted);
+					fail("stream decoded a crafted length");
+				} catch (CorruptBlockException expected) {
+				}
+				try {
+					decompressFile(compressor(), crafted);
+					fail("file decoded a crafted length");
+				} catch (CorruptBlockException expected) {
+				}
+				try (HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(crafted), compressor())) {
+					while (in.read(new byte[BLOCK_SIZE]) >= 0) {
+					}
+					fail("input stream decoded a crafted length");
+				} catch (CorruptBlockException expected) {
+				}
+			}
+		}
+	}
+}
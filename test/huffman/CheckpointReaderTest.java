@@ -0,0 +1,153 @@
+package huffman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CheckpointReaderTest {
+	private static final int INTERVAL = 1000;
+
+	/**
+	 * Compresses {@code data} with checkpoints into a temporary file.
+	 */
+	private static Path compress(byte[] data, boolean mapped) throws IOException {
+		Path input = Files.createTempFile("huffman", ".in");
+		Path output = Files.createTempFile("huffman", ".huf");
+		try {
+			Files.write(input, data);
+			HuffmanCompressor compressor = new HuffmanCompressor();
+			compressor.setCheckpointInterval(INTERVAL);
+			if (mapped) {
+				compressor.compressMapped(input, output);
+			} else {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				compressor.compress(input, out);
+				Files.write(output, out.toByteArray());
+			}
+			return output;
+		} finally {
+			Files.delete(input);
+		}
+	}
+
+	private static Path write(byte[] compressed) throws IOException {
+		Path file = Files.createTempFile("huffman", ".huf");
+		Files.write(file, compressed);
+		return file;
+	}
+
+	@Test
+	public void readsAnyRange() throws IOException {
+		byte[] data = Samples.text(25 * INTERVAL + 17, 1);
+		for (boolean mapped : new boolean[] { false, true }) {
+			Path file = compress(data, mapped);
+			try (CheckpointReader reader = CheckpointReader.open(file)) {
+				assertEquals(data.length, reader.length());
+				assertEquals(INTERVAL, reader.getCheckpointInterval());
+				Random random = new Random(2);
+				for (int k = 0; k < 200; k++) {
+					int position = random.nextInt(data.length);
+					int len = random.nextInt(3 * INTERVAL);
+					byte[] b = new byte[len + 2];
+					int n = reader.read(position, b, 1, len);
+					assertEquals(Math.min(len, data.length - position), n);
+					assertArrayEquals(Arrays.copyOfRange(data, position, position + n), Arrays.copyOfRange(b, 1, 1 + n));
+				}
+				assertEquals(-1, reader.read(data.length, new byte[1], 0, 1));
+			} finally {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void fileStillDecodesAsWhole() throws IOException {
+		byte[] data = Samples.text(5 * INTERVAL, 3);
+		Path file = compress(data, false);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new HuffmanCompressor().decompress(Files.newInputStream(file), out);
+			assertArrayEquals(data, out.toByteArray());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsFileWithoutIndex() throws IOException {
+		Path input = Files.createTempFile("huffman", ".in");
+		Path file = null;
+		try {
+			Files.write(input, Samples.text(5000, 4));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new HuffmanCompressor().compress(input, out);
+			file = write(out.toByteArray());
+			CheckpointReader.open(file).close();
+		} finally {
+			Files.delete(input);
+			if (file != null)
+				Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsTruncatedIndex() throws IOException {
+		Path file = compress(Samples.text(5 * INTERVAL, 5), false);
+		try {
+			byte[] compressed = Files.readAllBytes(file);
+			// drop one checkpoint and keep the footer
+			int footer = HuffmanCompressor.CHECKPOINT_FOOTER_SIZE;
+			byte[] cut = Arrays.copyOf(compressed, compressed.length - 8);
+			System.arraycopy(compressed, compressed.length - footer, cut, cut.length - footer, footer);
+			Files.write(file, cut);
+			CheckpointReader.open(file).close();
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Returns the file with its stored length replaced by 0x7FFFFFFF.
+	 */
+	private static byte[] withCraftedLength(byte[] compressed) throws IOException {
+		ByteArrayInputStream in = new ByteArrayInputStream(compressed, 4, compressed.length - 4);
+		CanonicalCode.readVarLong(in);
+		int rest = compressed.length - in.available();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(compressed, 0, 4);
+		CanonicalCode.writeVarint(out, Integer.MAX_VALUE);
+		out.write(compressed, rest, compressed.length - rest);
+		return out.toByteArray();
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsCraftedLength() throws IOException {
+		Path file = compress(Samples.text(5 * INTERVAL, 6), false);
+		try {
+			Files.write(file, withCraftedLength(Files.readAllBytes(file)));
+			CheckpointReader.open(file).close();
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void decompressRejectsCraftedLength() throws IOException {
+		Path file = compress(Samples.text(5 * INTERVAL, 7), false);
+		try {
+			byte[] compressed = withCraftedLength(Files.readAllBytes(file));
+			new HuffmanCompressor().decompress(new ByteArrayInputStream(compressed), new ByteArrayOutputStream());
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package huffman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CodecCacheTest {
+
+	/**
+	 * Returns the header of a code over {@code symbols} bytes, different for
+	 * every count.
+	 */
+	private static byte[] header(int symbols) {
+		long[] counts = new long[256];
+		for (int symbol = 0; symbol < symbols; symbol++)
+			counts[symbol] = symbol + 1;
+		return new HuffmanCompressor().code(counts).toByteArray();
+	}
+
+	@Test
+	public void staysWithinCapacity() {
+		CodecCache cache = new CodecCache(8);
+		for (int symbols = 2; symbols < 100; symbols++) {
+			cache.get(header(symbols));
+			assertTrue(cache.size() <= 8);
+		}
+		assertEquals(8, cache.size());
+		assertEquals(98, cache.getMisses());
+	}
+
+	@Test
+	public void hitReturnsCachedCodec() {
+		CodecCache cache = new CodecCache(4);
+		HuffmanCodec codec = cache.get(header(5));
+		assertSame(codec, cache.get(header(5)));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void evictsEntryNotUsedSinceInsert() {
+		CodecCache cache = new CodecCache(2);
+		HuffmanCodec a = cache.get(header(2));
+		HuffmanCodec b = cache.get(header(3));
+		assertSame(a, cache.get(header(2)));
+		cache.get(header(4));
+		assertEquals(2, cache.size());
+		// a was used again, so b is the one evicted
+		assertSame(a, cache.get(header(2)));
+		assertNotSame(b, cache.get(header(3)));
+		assertEquals(2, cache.getHits());
+		assertEquals(4, cache.getMisses());
+	}
+
+	@Test
+	public void clearEmptiesCache() {
+		CodecCache cache = new CodecCache(2);
+		cache.get(header(2));
+		cache.get(header(3));
+		cache.clear();
+		assertEquals(0, cache.size());
+		cache.get(header(2));
+		assertEquals(3, cache.getMisses());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsCapacityOfZero() {
+		new CodecCache(0);
+	}
+}
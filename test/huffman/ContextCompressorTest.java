@@ -0,0 +1,73 @@
+package huffman;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ContextCompressorTest {
+
+	/**
+	 * Returns text followed by a stretch of other bytes, so that parts of
+	 * the input are coded differently.
+	 */
+	private static byte[] mixed(int size) {
+		byte[] data = Samples.text(size, size);
+		for (int i = size / 2; i < size * 3 / 4; i++)
+			data[i] = (byte) (i * i >>> 5);
+		return data;
+	}
+
+	/**
+	 * Returns {@code compressed} with its stored length replaced by
+	 * 0x7FFFFFFF.
+	 */
+	private static byte[] withCraftedLength(byte[] compressed) throws IOException {
+		int rest = 4;
+		while ((compressed[rest] & 0x80) != 0)
+			rest++;
+		rest++;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(compressed, 0, 4);
+		CanonicalCode.writeVarint(out, Integer.MAX_VALUE);
+		out.write(compressed, rest, compressed.length - rest);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void roundTrips() {
+		for (int maxContexts : new int[] { 0, 1, ContextCompressor.DEFAULT_MAX_CONTEXTS, 256 }) {
+			ContextCompressor compressor = new ContextCompressor(maxContexts);
+			for (int size : new int[] { 0, 1, 2, 49, 50, 51, 1000, 60000 }) {
+				byte[] data = mixed(size);
+				assertArrayEquals(data, ContextCompressor.decompress(compressor.compress(data)));
+			}
+		}
+	}
+
+	@Test
+	public void roundTripsOneByteValue() {
+		byte[] data = new byte[5000];
+		Arrays.fill(data, (byte) 'x');
+		assertArrayEquals(data, ContextCompressor.decompress(new ContextCompressor().compress(data)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTruncatedInput() {
+		byte[] compressed = new ContextCompressor().compress(mixed(5000));
+		ContextCompressor.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOtherFormat() {
+		ContextCompressor.decompress(Samples.text(100, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsCraftedLength() throws IOException {
+		ContextCompressor.decompress(withCraftedLength(new ContextCompressor().compress(mixed(5000))));
+	}
+}
@@ -0,0 +1,111 @@
+package huffman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class HuffmanDictionaryTest {
+
+	private static HuffmanDictionary train(String id) throws IOException {
+		return HuffmanDictionary.train(id, new ByteArrayInputStream(Samples.text(20000, 1)));
+	}
+
+	@Test
+	public void roundTripsMessages() throws IOException {
+		HuffmanDictionary dictionary = train("text");
+		for (String message : new String[] { "", "e", "a note in lower case", "\u00e9t\u00e9 \u2603 \u0000" })
+			assertEquals(message, dictionary.decodeString(dictionary.encode(message)));
+		byte[] any = new byte[256];
+		for (int b = 0; b < any.length; b++)
+			any[b] = (byte) b;
+		assertArrayEquals(any, dictionary.decode(dictionary.encode(any)));
+	}
+
+	@Test
+	public void escapesBytesTheCorpusLacked() throws IOException {
+		HuffmanDictionary dictionary = HuffmanDictionary.train("ab", new ByteArrayInputStream("abab".getBytes(StandardCharsets.UTF_8)));
+		byte[] message = "abcab\u00ff".getBytes(StandardCharsets.UTF_8);
+		assertArrayEquals(message, dictionary.decode(dictionary.encode(message)));
+	}
+
+	@Test
+	public void loadsWhatItSaved() throws IOException {
+		HuffmanDictionary dictionary = train("saved");
+		Path file = Files.createTempFile("saved", HuffmanDictionary.SUFFIX);
+		try {
+			dictionary.save(file);
+			HuffmanDictionary loaded = HuffmanDictionary.load(file);
+			assertEquals("saved", loaded.getId());
+			byte[] encoded = dictionary.encode("shared by both sides");
+			assertEquals("shared by both sides", loaded.decodeString(encoded));
+			assertArrayEquals(encoded, loaded.encode("shared by both sides"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void cacheLoadsByIdAndChecksIt() throws IOException {
+		Path directory = Files.createTempDirectory("dictionaries");
+		Path saved = directory.resolve("one" + HuffmanDictionary.SUFFIX);
+		Path renamed = directory.resolve("two" + HuffmanDictionary.SUFFIX);
+		try {
+			train("one").save(saved);
+			Files.copy(saved, renamed);
+			DictionaryCache cache = new DictionaryCache(directory, 4);
+			assertSame(cache.get("one"), cache.get("one"));
+			try {
+				cache.get("two");
+				fail("file of another id was loaded");
+			} catch (IOException expected) {
+			}
+			for (String id : new String[] { "../one", "a/b", "..", "" }) {
+				try {
+					cache.get(id);
+					fail("id '" + id + "' was accepted");
+				} catch (IllegalArgumentException expected) {
+				}
+			}
+		} finally {
+			Files.delete(saved);
+			Files.delete(renamed);
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void cacheStaysWithinCapacity() throws IOException {
+		Path directory = Files.createTempDirectory("dictionaries");
+		try {
+			DictionaryCache cache = new DictionaryCache(directory, 2);
+			for (String id : new String[] { "a", "b", "c" })
+				cache.register(train(id));
+			assertEquals(2, cache.size());
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTruncatedMessage() throws IOException {
+		HuffmanDictionary dictionary = train("text");
+		byte[] encoded = dictionary.encode("a message long enough to cut in half");
+		dictionary.decode(Arrays.copyOf(encoded, encoded.length / 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsCraftedLength() throws IOException {
+		// a length varint of 0x7FFFFFFF and no escapes, with one byte of codes
+		train("text").decode(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0, 0 });
+	}
+}
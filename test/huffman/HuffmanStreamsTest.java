@@ -0,0 +1,160 @@
+package huffman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HuffmanStreamsTest {
+	private static final int BLOCK_SIZE = BlockCompressorTest.BLOCK_SIZE;
+
+	/**
+	 * Writes {@code data} in pieces of {@code piece} bytes, flushing after
+	 * every {@code flushEvery} pieces if that is positive.
+	 */
+	static byte[] compress(BlockCompressor compressor, byte[] data, int piece, int flushEvery) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (HuffmanOutputStream huffman = new HuffmanOutputStream(out, compressor)) {
+			for (int off = 0, n = 1; off < data.length; off += piece, n++) {
+				huffman.write(data, off, Math.min(piece, data.length - off));
+				if (flushEvery > 0 && n % flushEvery == 0)
+					huffman.flush();
+			}
+		}
+		return out.toByteArray();
+	}
+
+	static int headerSize(BlockCompressor compressor) {
+		return compressor.isChecked() ? BlockCompressor.CHECKED_HEADER_SIZE : BlockCompressor.HEADER_SIZE;
+	}
+
+	static byte[] decompress(BlockCompressor compressor, byte[] compressed) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(compressed), compressor)) {
+			byte[] buffer = new byte[777];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void streamsRoundTrip() throws IOException {
+		for (boolean interleaved : new boolean[] { false, true }) {
+			BlockCompressor compressor = BlockCompressorTest.compressor();
+			compressor.setInterleaved(interleaved);
+			for (int size : new int[] { 0, 1, BLOCK_SIZE, 5 * BLOCK_SIZE + 3 }) {
+				byte[] data = Samples.text(size, size);
+				for (int piece : new int[] { 1, 333, 2 * BLOCK_SIZE }) {
+					for (int flushEvery : new int[] { 0, 1, 3 }) {
+						byte[] compressed = compress(compressor, data, piece, flushEvery);
+						assertArrayEquals(data, decompress(compressor, compressed));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void streamsMatchTheBlockFormat() throws IOException {
+		BlockCompressor compressor = BlockCompressorTest.compressor();
+		byte[] data = Samples.text(7 * BLOCK_SIZE + 11, 5);
+		// without flushes the blocks are the ones the compressor cuts
+		byte[] streamed = compress(compressor, data, 100, 0);
+		assertArrayEquals(BlockCompressorTest.compress(compressor, data), streamed);
+		byte[] flushed = compress(compressor, data, 100, 4);
+		assertArrayEquals(data, BlockCompressorTest.decompress(compressor, flushed));
+		assertArrayEquals(data, BlockCompressorTest.decompressFile(compressor, flushed));
+		assertArrayEquals(data, decompress(compressor, BlockCompressorTest.compress(compressor, data)));
+	}
+
+	@Test
+	public void channelsRoundTrip() throws IOException {
+		BlockCompressor compressor = BlockCompressorTest.compressor();
+		byte[] data = Samples.text(4 * BLOCK_SIZE + 17, 9);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (WritableByteChannel channel = HuffmanChannels.newChannel(Channels.newChannel(out), compressor)) {
+			ByteBuffer heap = ByteBuffer.wrap(data, 0, 2 * BLOCK_SIZE + 5);
+			ByteBuffer direct = ByteBuffer.allocateDirect(data.length - heap.limit());
+			direct.put(data, heap.limit(), direct.capacity()).flip();
+			assertEquals(heap.remaining(), channel.write(heap));
+			((Flushable) channel).flush();
+			assertEquals(direct.remaining(), channel.write(direct));
+		}
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		try (ReadableByteChannel channel = HuffmanChannels
+				.newChannel(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), compressor)) {
+			ByteBuffer buffer = ByteBuffer.allocate(300);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				decoded.write(buffer.array(), 0, buffer.limit());
+				buffer.clear();
+			}
+		}
+		assertArrayEquals(data, decoded.toByteArray());
+	}
+
+	@Test
+	public void channelSeesOneWritePerBlock() throws IOException {
+		BlockCompressor compressor = BlockCompressorTest.compressor();
+		byte[] data = Samples.text(3 * BLOCK_SIZE + 1, 2);
+		RecordingChannel recording = new RecordingChannel();
+		try (WritableByteChannel channel = HuffmanChannels.newChannel(recording, compressor)) {
+			channel.write(ByteBuffer.wrap(data));
+		}
+		// header, four blocks, index
+		assertEquals(6, recording.writes.size());
+		assertEquals(headerSize(compressor), (int) recording.writes.get(0));
+		assertEquals(8 * 4 + 8 + BlockCompressor.FOOTER_SIZE, (int) recording.writes.get(5));
+		assertArrayEquals(data, BlockCompressorTest.decompress(compressor, recording.out.toByteArray()));
+	}
+
+	@Test
+	public void streamRejectsCraftedLength() throws IOException {
+		BlockCompressor compressor = BlockCompressorTest.compressor();
+		byte[] compressed = compress(compressor, Samples.text(2 * BLOCK_SIZE, 3), BLOCK_SIZE, 0);
+		compressed[headerSize(compressor)] = 0x7F;
+		try {
+			decompress(compressor, compressed);
+			fail("crafted length accepted");
+		} catch (CorruptBlockException ex) {
+			assertEquals(0, ex.getBlock());
+		}
+	}
+
+	private static final class RecordingChannel implements WritableByteChannel {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final List<Integer> writes = new ArrayList<>();
+
+		@Override
+		public int write(ByteBuffer src) {
+			int n = src.remaining();
+			writes.add(n);
+			while (src.hasRemaining())
+				out.write(src.get());
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package huffman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HuffmanTest {
+
+	/**
+	 * Returns symbols '0', '1', ... with Fibonacci counts, whose Huffman tree
+	 * is one level deeper per symbol.
+	 */
+	private static String skewed(int symbols) {
+		StringBuilder sb = new StringBuilder();
+		long count = 1, next = 1;
+		for (int symbol = 0; symbol < symbols; symbol++) {
+			for (long i = 0; i < count; i++)
+				sb.append((char) ('0' + symbol));
+			long sum = count + next;
+			count = next;
+			next = sum;
+		}
+		return sb.toString();
+	}
+
+	private static void assertRoundTrip(String s, Huffman huffman) {
+		assertEquals(s, huffman.getEncoding(huffman.getPackedDecoding(), huffman.getPackedBitLength()));
+	}
+
+	@Test
+	public void treeDeeperThanCodesRoundTrips() {
+		String s = skewed(CodeTable.MAX_LENGTH + 3);
+		for (boolean higherPercentInLeft : new boolean[] { false, true }) {
+			for (boolean isOneOnRight : new boolean[] { false, true }) {
+				Huffman huffman = new Huffman(s, higherPercentInLeft, isOneOnRight);
+				assertRoundTrip(s, huffman);
+				assertTrue(huffman.table.maxLength <= CodeTable.MAX_LENGTH);
+				assertRoundTrip(s, new Huffman(s, higherPercentInLeft, isOneOnRight, false));
+				Huffman canonical = new Huffman(s, higherPercentInLeft, isOneOnRight, true);
+				assertRoundTrip(s, canonical);
+				Huffman decoder = Huffman.fromCanonicalHeader(canonical.getCanonicalHeader());
+				assertEquals(s, decoder.getEncoding(canonical.getPackedDecoding(), canonical.getPackedBitLength()));
+				Huffman limited = new Huffman(s, higherPercentInLeft, isOneOnRight, 16);
+				assertRoundTrip(s, limited);
+				assertEquals(16, limited.table.maxLength);
+				assertTrue(limited.getLengthLimitCost() > 0);
+			}
+		}
+	}
+
+	@Test
+	public void shallowTreeKeepsTreeCodes() {
+		String s = skewed(10);
+		Huffman huffman = new Huffman(s, false, false, 16);
+		assertRoundTrip(s, huffman);
+		assertEquals(0, huffman.getLengthLimitCost(), 0);
+		assertEquals(9, huffman.table.maxLength);
+	}
+
+	@Test
+	public void tiesKeepTheCodesOfTheResultTable() {
+		// codes the result table showed when the counts were kept in a HashMap
+		Huffman huffman = new Huffman("hello world", false, true);
+		assertEquals("011", huffman.result.get("h"));
+		assertEquals("001", huffman.result.get("e"));
+		assertEquals("010", huffman.result.get("w"));
+		assertEquals("1111", huffman.result.get("r"));
+		assertEquals("000", huffman.result.get("d"));
+		huffman = new Huffman("mississippi river", false, true);
+		assertEquals("1011", huffman.result.get("m"));
+		assertEquals("1010", huffman.result.get("v"));
+	}
+}
@@ -0,0 +1,30 @@
+package huffman;
+
+import java.util.Random;
+
+/**
+ * Inputs for the round-trip tests.
+ */
+final class Samples {
+	private Samples() {
+	}
+
+	/**
+	 * Returns {@code size} bytes of text-like data: a few frequent letters,
+	 * some rarer bytes, and now and then any byte at all.
+	 */
+	static byte[] text(int size, long seed) {
+		Random random = new Random(seed);
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			int roll = random.nextInt(100);
+			if (roll < 80)
+				data[i] = (byte) "etaoin shrdlu".charAt(random.nextInt(13));
+			else if (roll < 97)
+				data[i] = (byte) ('A' + random.nextInt(26));
+			else
+				data[i] = (byte) random.nextInt(256);
+		}
+		return data;
+	}
+}